@@ -0,0 +1,92 @@
+/*
+ * Copyright 2011, 2012 Vaadin Ltd.
+ * 
+ * Licensed under the GNU Affero General Public License, Version 3 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at
+ * 
+ * http://www.gnu.org/licenses/agpl.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.vaadin.jefferson.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.vaadin.jefferson.*;
+import org.vaadin.jefferson.content.SimpleComposite;
+import org.vaadin.jefferson.presentation.SmartPresentation;
+import org.vaadin.jefferson.presentation.SmartPresentation.Orientation;
+
+/**
+ * Measures changing the children of a presented composite, through
+ * {@link Composite#setChildren} and {@link Composite#replaceChild}. Run with
+ * <code>-prof gc</code> to see the allocation rate as well.
+ * 
+ * @author Marlon Richert @ Vaadin
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ChurnBenchmark {
+
+    @Param({ "8", "64" })
+    public int fanOut;
+
+    @Param({ "false", "true" })
+    public boolean reconciling;
+
+    private SimpleComposite composite;
+    private View<?>[] children;
+    private View<?>[] rotated;
+    private View<?>[] spares;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        children = new View<?>[fanOut];
+        rotated = new View<?>[fanOut];
+        spares = new View<?>[fanOut];
+        for (int i = 0; i < fanOut; i++) {
+            children[i] = Trees.leaf("Child " + i, i);
+            spares[i] = Trees.leaf("Child " + i, i);
+        }
+        for (int i = 0; i < fanOut; i++) {
+            rotated[i] = children[(i + 1) % fanOut];
+        }
+        composite = new SimpleComposite("Parent", children);
+        Presenter presenter = new SmartPresentation(Orientation.VERTICAL);
+        presenter.setReconciling(reconciling);
+        presenter.visit(composite);
+    }
+
+    /**
+     * Rotates the children by one position, and back again.
+     */
+    @Benchmark
+    public Composite<?> setChildren() {
+        composite.setChildren(rotated);
+        return composite.setChildren(children);
+    }
+
+    /**
+     * Replaces a child with an equivalent one, and back again.
+     */
+    @Benchmark
+    public boolean replaceChild() {
+        int index = next;
+        next = (next + 1) % fanOut;
+        View<?> child = composite.getChild(index);
+        View<?> spare = spares[index];
+        spares[index] = child;
+        return composite.replaceChild(child, spare);
+    }
+}
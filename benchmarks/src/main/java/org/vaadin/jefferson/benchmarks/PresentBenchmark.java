@@ -0,0 +1,106 @@
+/*
+ * Copyright 2011, 2012 Vaadin Ltd.
+ * 
+ * Licensed under the GNU Affero General Public License, Version 3 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at
+ * 
+ * http://www.gnu.org/licenses/agpl.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.vaadin.jefferson.benchmarks;
+
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+import org.vaadin.jefferson.Presenter;
+import org.vaadin.jefferson.content.SimpleComposite;
+import org.vaadin.jefferson.presentation.SmartPresentation;
+import org.vaadin.jefferson.presentation.SmartPresentation.Orientation;
+
+import com.vaadin.ui.Component;
+
+/**
+ * Measures presenting a whole view tree with {@link Presenter#visit}, using
+ * either the plain {@link Presenter} or {@link SmartPresentation}, the latter
+ * also with a pool for presenting subtrees in parallel. Run with
+ * <code>-prof gc</code> to see the allocation rate as well.
+ * 
+ * @author Marlon Richert @ Vaadin
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PresentBenchmark {
+
+    @Param({ "2", "4" })
+    public int depth;
+
+    @Param({ "3", "6" })
+    public int fanOut;
+
+    @Param({ "plain", "smart", "parallel" })
+    public String presenter;
+
+    private static final ForkJoinPool POOL = new ForkJoinPool();
+
+    private SimpleComposite tree;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        tree = Trees.generate(depth, fanOut);
+    }
+
+    private Presenter newPresenter() {
+        if (presenter.equals("plain")) {
+            return new Presenter();
+        }
+        SmartPresentation smart = new SmartPresentation(Orientation.VERTICAL);
+        if (presenter.equals("parallel")) {
+            smart.setPool(POOL);
+        }
+        return smart;
+    }
+
+    /**
+     * Presents a tree from scratch.
+     */
+    @Benchmark
+    public Component present() {
+        return newPresenter().visit(tree);
+    }
+
+    /**
+     * Presents a tree that has already been presented, keeping its current
+     * presentations.
+     */
+    @Benchmark
+    public Component reconcile(ReconcilingState state) {
+        return state.presenter.visit(state.tree);
+    }
+
+    /**
+     * A tree that has been presented once by a reconciling presenter.
+     */
+    @State(Scope.Thread)
+    public static class ReconcilingState {
+        private Presenter presenter;
+        private SimpleComposite tree;
+
+        @Setup(Level.Trial)
+        public void setUp(PresentBenchmark benchmark) {
+            presenter = benchmark.newPresenter();
+            presenter.setReconciling(true);
+            tree = Trees.generate(benchmark.depth, benchmark.fanOut);
+            presenter.visit(tree);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2011, 2012 Vaadin Ltd.
+ * 
+ * Licensed under the GNU Affero General Public License, Version 3 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at
+ * 
+ * http://www.gnu.org/licenses/agpl.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.vaadin.jefferson.benchmarks;
+
+import java.io.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.vaadin.jefferson.content.SimpleComposite;
+import org.vaadin.jefferson.presentation.SmartPresentation;
+import org.vaadin.jefferson.presentation.SmartPresentation.Orientation;
+
+/**
+ * Measures serializing and deserializing a presented view tree, as happens
+ * when sessions are replicated. The size of the serialized tree is reported
+ * as a secondary result of {@link #serialize(Size)}.
+ * 
+ * @author Marlon Richert @ Vaadin
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SerializationBenchmark {
+
+    @Param({ "2", "4" })
+    public int depth;
+
+    @Param({ "3", "6" })
+    public int fanOut;
+
+    /**
+     * The size of the serialized tree, in bytes.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Size {
+        public long serializedBytes;
+    }
+
+    private SimpleComposite tree;
+    private byte[] serialized;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        tree = Trees.generate(depth, fanOut);
+        new SmartPresentation(Orientation.VERTICAL).visit(tree);
+        serialized = write();
+    }
+
+    @Benchmark
+    public byte[] serialize(Size size) throws IOException {
+        byte[] bytes = write();
+        size.serializedBytes = bytes.length;
+        return bytes;
+    }
+
+    @Benchmark
+    public Object deserialize() throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(
+                new ByteArrayInputStream(serialized))) {
+            return in.readObject();
+        }
+    }
+
+    private byte[] write() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(tree);
+        }
+        return bytes.toByteArray();
+    }
+}
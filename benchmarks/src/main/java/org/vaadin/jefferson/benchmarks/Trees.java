@@ -0,0 +1,73 @@
+/*
+ * Copyright 2011, 2012 Vaadin Ltd.
+ * 
+ * Licensed under the GNU Affero General Public License, Version 3 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at
+ * 
+ * http://www.gnu.org/licenses/agpl.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.vaadin.jefferson.benchmarks;
+
+import org.vaadin.jefferson.View;
+import org.vaadin.jefferson.content.*;
+
+/**
+ * Generates view trees of a given shape for benchmarking.
+ * 
+ * @author Marlon Richert @ Vaadin
+ */
+final class Trees {
+    private static final String[] CHOICES = { "One", "Two", "Three", "Four" };
+
+    private Trees() {
+    }
+
+    /**
+     * Generates a tree of {@link SimpleComposite}s, of which the deepest level
+     * contains a mix of {@link ButtonControl}s, {@link TextControl}s and
+     * {@link SelectionControl}s.
+     * 
+     * @param depth
+     *            The number of composite levels.
+     * @param fanOut
+     *            The number of children of each composite.
+     */
+    static SimpleComposite generate(int depth, int fanOut) {
+        return composite("Root", depth, fanOut);
+    }
+
+    private static SimpleComposite composite(String name, int depth,
+            int fanOut) {
+        View<?>[] children = new View<?>[fanOut];
+        for (int i = 0; i < fanOut; i++) {
+            String childName = name + " " + i;
+            children[i] = depth > 1 ? composite(childName, depth - 1, fanOut)
+                    : leaf(childName, i);
+        }
+        return new SimpleComposite(name, children);
+    }
+
+    /**
+     * Creates a leaf view of a type that depends on the given index.
+     */
+    static View<?> leaf(String name, int index) {
+        switch (index % 3) {
+        case 0:
+            return new ButtonControl(name);
+        case 1:
+            return new TextControl(name);
+        default:
+            SelectionControl<String> selection = new SelectionControl<>(name,
+                    String.class);
+            selection.setChoices(CHOICES);
+            return selection;
+        }
+    }
+}
@@ -15,6 +15,7 @@
  */
 package org.vaadin.jefferson;
 
+import java.io.*;
 import java.util.*;
 
 import com.vaadin.ui.*;
@@ -26,7 +27,20 @@ import com.vaadin.ui.*;
  * @author Marlon Richert @ Vaadin
  */
 public abstract class Composite<P extends ComponentContainer> extends View<P> {
-    private Set<View<?>> children = new LinkedHashSet<>();
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The version of the serialized form written by {@link Composite}.
+     */
+    private static final int SERIAL_FORMAT = 1;
+
+    private static final View<?>[] NO_CHILDREN = {};
+
+    private transient View<?>[] children = NO_CHILDREN;
+    private transient Component displaced;
+    private transient boolean lazy;
+    private transient boolean expanded;
+    private transient boolean suspended;
 
     /**
      * Creates a new composite view without children.
@@ -37,6 +51,16 @@ public abstract class Composite<P extends ComponentContainer> extends View<P> {
         super(name, base);
     }
 
+    /**
+     * Creates a new composite view without children, sharing the given
+     * template with other views.
+     * 
+     * @see View#View(ViewTemplate)
+     */
+    public Composite(ViewTemplate<P> template) {
+        super(template);
+    }
+
     /**
      * Creates a new composite view containing the given children.
      * 
@@ -66,27 +90,75 @@ public abstract class Composite<P extends ComponentContainer> extends View<P> {
      * @return This composite.
      */
     public Composite<P> setChildren(View<?>... children) {
+        Presenter presenter = getPresenter();
+        Set<View<?>> retained = new HashSet<>(Arrays.asList(children));
+        List<View<?>> outgoing = new ArrayList<>();
         for (View<?> child : this.children) {
+            if (!retained.contains(child)) {
+                outgoing.add(child);
+            }
+        }
+
+        List<View<?>> adopters = new ArrayList<>();
+        List<Component> adoptees = new ArrayList<>();
+        if (presenter != null && presenter.isReconciling()) {
+            match(outgoing, Arrays.asList(children), adopters, adoptees);
+        }
+
+        for (View<?> child : outgoing) {
             child.setParent(null);
         }
-        this.children.clear();
-        for (View<?> child : children) {
-            this.children.add(child);
+        this.children = retained.size() == children.length ? children.clone()
+                : new LinkedHashSet<>(Arrays.asList(children))
+                        .toArray(NO_CHILDREN);
+        for (View<?> child : this.children) {
             child.setParent(this);
         }
+        for (int i = 0; i < adopters.size(); i++) {
+            adopters.get(i).adopt(adoptees.get(i));
+        }
 
-        P ownPresentation = getPresentation();
-        if (ownPresentation != null) {
-            ownPresentation.removeAllComponents();
-            for (View<?> child : children) {
-                Component childPresentation = child.getPresentation();
-                if (childPresentation != null) {
-                    ownPresentation.addComponent(childPresentation);
+        updateAll();
+
+        markChanged();
+        if (presenter != null) {
+            presenter.childrenChanged(this);
+        }
+        return this;
+    }
+
+    /**
+     * Pairs each of the given new views that has no presentation with an
+     * unpaired old view of the same class and name, recursing into the
+     * children of paired composites. The new views are collected in
+     * <code>adopters</code> in pre-order, and the old views' presentations at
+     * the same indexes in <code>adoptees</code>.
+     */
+    private static void match(Collection<View<?>> oldViews,
+            Collection<View<?>> newViews, List<View<?>> adopters,
+            List<Component> adoptees) {
+        List<View<?>> candidates = new LinkedList<>(oldViews);
+        for (View<?> newView : newViews) {
+            if (newView.getPresentation() != null) {
+                continue;
+            }
+            for (Iterator<View<?>> i = candidates.iterator(); i.hasNext();) {
+                View<?> oldView = i.next();
+                if (oldView.getClass() == newView.getClass()
+                        && oldView.getName().equals(newView.getName())
+                        && oldView.getPresentation() != null) {
+                    i.remove();
+                    adopters.add(newView);
+                    adoptees.add(oldView.getPresentation());
+                    if (newView instanceof Composite<?>) {
+                        match(Arrays.asList(((Composite<?>) oldView).children),
+                                Arrays.asList(((Composite<?>) newView).children),
+                                adopters, adoptees);
+                    }
+                    break;
                 }
             }
         }
-
-        return this;
     }
 
     /**
@@ -96,12 +168,49 @@ public abstract class Composite<P extends ComponentContainer> extends View<P> {
     @Override
     protected P accept(Presenter presenter) {
         P presentation = super.accept(presenter);
-        for (View<?> child : children) {
-            presenter.visit(child);
+        if (!isDeferred()) {
+            presenter.visitChildren(this);
         }
         return presentation;
     }
 
+    /**
+     * Sets whether this composite defers the presentation of its children.
+     * When a lazy composite is visited, only the composite itself is rendered
+     * and styled, until {@link Presenter#presentDeferred(Composite)} is called
+     * for it, typically when its presentation is first shown or expanded.
+     */
+    public void setLazy(boolean lazy) {
+        this.lazy = lazy;
+    }
+
+    /**
+     * Tells whether this composite defers the presentation of its children.
+     * 
+     * @see #setLazy(boolean)
+     */
+    public boolean isLazy() {
+        return lazy;
+    }
+
+    /**
+     * Tells whether the presentation of this composite's children is still
+     * being deferred.
+     * 
+     * @see #setLazy(boolean)
+     */
+    public boolean isDeferred() {
+        return lazy && !expanded;
+    }
+
+    /**
+     * Stops deferring and visits each of this composite's children.
+     */
+    void presentDeferred(Presenter presenter) {
+        expanded = true;
+        presenter.visitChildren(this);
+    }
+
     /**
      * Sets this composite's presentation. If the given presentation is
      * <code>null</code>, it will also clear the presentation of each of this
@@ -110,7 +219,7 @@ public abstract class Composite<P extends ComponentContainer> extends View<P> {
     @Override
     protected boolean setPresentation(P presentation) {
         if (presentation == null) {
-            for (View<?> child : getChildren()) {
+            for (View<?> child : children) {
                 child.setPresentation(null);
             }
         }
@@ -134,40 +243,216 @@ public abstract class Composite<P extends ComponentContainer> extends View<P> {
             return false;
         }
 
-        replacement.setPresentation(replacement.createFallback());
+        Presenter presenter = getPresenter();
+        if (presenter == null) {
+            replacement.setPresentation(replacement.createFallback());
+        }
 
         Component oldPresentation = existing.getPresentation();
         Component newPresentation = replacement.getPresentation();
 
-        if (children.contains(existing)) {
-            children.remove(existing);
+        int index = indexOf(existing);
+        if (index >= 0) {
             existing.setParent(null);
         }
-        update(oldPresentation, newPresentation);
-        children.add(replacement);
+        if (presenter == null) {
+            update(oldPresentation, newPresentation);
+        }
+        if (indexOf(replacement) >= 0) {
+            if (index >= 0) {
+                remove(index);
+            }
+        } else if (index >= 0) {
+            children = children.clone();
+            children[index] = replacement;
+        } else {
+            children = Arrays.copyOf(children, children.length + 1);
+            children[children.length - 1] = replacement;
+        }
         replacement.setParent(this);
 
-        Presenter presenter = getPresenter();
         if (presenter != null) {
+            /*
+             * Leave the old presentation in place until the replacement has
+             * been rendered, so it can be swapped in with a single container
+             * operation instead of being added, moved and replaced.
+             */
+            displaced = oldPresentation;
+            presenter.childrenChanged(this);
             presenter.visit(replacement);
+            if (displaced != null) {
+                update(displaced, replacement.getPresentation());
+                displaced = null;
+            }
+            markChanged();
+            presenter.restyleTree(this);
+        } else {
+            markChanged();
         }
         return true;
     }
 
+    /**
+     * Appends the given views, which have no parent, to this composite's
+     * children, without updating any presentations or notifying the
+     * presenter.
+     * 
+     * @see TreeBuilder
+     */
+    void append(List<View<?>> views) {
+        View<?>[] linked = Arrays.copyOf(children, children.length
+                + views.size());
+        for (int i = 0; i < views.size(); i++) {
+            View<?> view = views.get(i);
+            linked[children.length + i] = view;
+            view.setParent(this);
+        }
+        children = linked;
+    }
+
+    private int indexOf(View<?> child) {
+        for (int i = 0; i < children.length; i++) {
+            if (children[i] == child) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void remove(int index) {
+        View<?>[] remaining = new View<?>[children.length - 1];
+        System.arraycopy(children, 0, remaining, 0, index);
+        System.arraycopy(children, index + 1, remaining, index,
+                remaining.length - index);
+        children = remaining;
+    }
+
+    /**
+     * Stops adding, removing and replacing child presentations in this
+     * composite's presentation, so that children can be rendered on other
+     * threads.
+     */
+    void suspendUpdates() {
+        suspended = true;
+    }
+
+    /**
+     * Brings this composite's presentation in line with its children's again
+     * after {@link #suspendUpdates()}.
+     */
+    void resumeUpdates() {
+        suspended = false;
+        updateAll();
+    }
+
     void update(Component oldPresentation, Component newPresentation) {
+        if (suspended) {
+            return;
+        }
         P ownPresentation = getPresentation();
+        if (displaced != null
+                && (oldPresentation == null
+                        || oldPresentation.getParent() != ownPresentation)) {
+            oldPresentation = displaced;
+            displaced = null;
+        }
         if (ownPresentation != null) {
             if (oldPresentation != null
                     && oldPresentation.getParent() == ownPresentation) {
                 if (newPresentation != null) {
                     ownPresentation.replaceComponent(oldPresentation,
                             newPresentation);
+                    countUpdate();
                 } else {
                     ownPresentation.removeComponent(oldPresentation);
+                    countUpdate();
                 }
             } else if (newPresentation != null) {
                 ownPresentation.addComponent(newPresentation);
+                countUpdate();
+            }
+        }
+    }
+
+    /**
+     * Brings this composite's presentation in line with the presentations of
+     * its children in a single pass: components that are no longer needed are
+     * removed, missing ones are added, and those that are already in the
+     * right place are left alone.
+     */
+    private void updateAll() {
+        P ownPresentation = getPresentation();
+        if (ownPresentation == null) {
+            return;
+        }
+
+        List<Component> wanted = new ArrayList<>(children.length);
+        for (View<?> child : children) {
+            Component childPresentation = child.getPresentation();
+            if (childPresentation != null) {
+                wanted.add(childPresentation);
+            }
+        }
+        Set<Component> wantedSet = Collections
+                .newSetFromMap(new IdentityHashMap<Component, Boolean>());
+        wantedSet.addAll(wanted);
+
+        List<Component> current = new ArrayList<>();
+        Iterator<Component> iterator = ownPresentation.getComponentIterator();
+        while (iterator.hasNext()) {
+            current.add(iterator.next());
+        }
+        for (Iterator<Component> unwanted = current.iterator(); unwanted
+                .hasNext();) {
+            Component component = unwanted.next();
+            if (!wantedSet.contains(component)) {
+                ownPresentation.removeComponent(component);
+                countUpdate();
+                unwanted.remove();
+            }
+        }
+
+        int i = 0;
+        while (i < wanted.size() && i < current.size()
+                && wanted.get(i) == current.get(i)) {
+            i++;
+        }
+        if (ownPresentation instanceof AbstractOrderedLayout
+                || ownPresentation instanceof CssLayout) {
+            for (; i < wanted.size(); i++) {
+                Component component = wanted.get(i);
+                if (i < current.size() && current.get(i) == component) {
+                    continue;
+                }
+                if (current.remove(component)) {
+                    ownPresentation.removeComponent(component);
+                    countUpdate();
+                }
+                if (ownPresentation instanceof AbstractOrderedLayout) {
+                    ((AbstractOrderedLayout) ownPresentation).addComponent(
+                            component, i);
+                } else {
+                    ((CssLayout) ownPresentation).addComponent(component, i);
+                }
+                countUpdate();
+                current.add(i, component);
+            }
+        } else {
+            for (Component component : current.subList(i, current.size())) {
+                ownPresentation.removeComponent(component);
+                countUpdate();
             }
+            for (Component component : wanted.subList(i, wanted.size())) {
+                ownPresentation.addComponent(component);
+                countUpdate();
+            }
+        }
+    }
+
+    private void countUpdate() {
+        Presenter presenter = getPresenter();
+        if (presenter != null) {
+            presenter.currentMetrics().containerUpdated(getClass());
         }
     }
 
@@ -177,6 +462,53 @@ public abstract class Composite<P extends ComponentContainer> extends View<P> {
      * @return This view's child content nodes.
      */
     public View<?>[] getChildren() {
-        return children.toArray(new View<?>[children.size()]);
+        return children.clone();
+    }
+
+    /**
+     * Gets the number of this view's children, without copying them.
+     * 
+     * @see #getChild(int)
+     */
+    public int getChildCount() {
+        return children.length;
+    }
+
+    /**
+     * Gets the child at the given index, without copying this view's
+     * children.
+     * 
+     * @param index
+     *            A number from 0 to {@link #getChildCount()}, exclusive.
+     * @return This view's child content node at the given index.
+     */
+    public View<?> getChild(int index) {
+        return children[index];
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.writeByte(SERIAL_FORMAT);
+        out.writeInt(children.length);
+        for (View<?> child : children) {
+            out.writeObject(child);
+        }
+        out.writeBoolean(lazy);
+        out.writeBoolean(expanded);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException,
+            ClassNotFoundException {
+        int format = in.readUnsignedByte();
+        if (format != SERIAL_FORMAT) {
+            throw new InvalidObjectException("Can't read serialized form "
+                    + format + " of " + Composite.class.getName());
+        }
+        int childCount = in.readInt();
+        children = childCount == 0 ? NO_CHILDREN : new View<?>[childCount];
+        for (int i = 0; i < childCount; i++) {
+            children[i] = (View<?>) in.readObject();
+        }
+        lazy = in.readBoolean();
+        expanded = in.readBoolean();
     }
 }
@@ -15,7 +15,9 @@
  */
 package org.vaadin.jefferson;
 
-import java.lang.reflect.*;
+import java.io.*;
+import java.lang.invoke.*;
+import java.util.concurrent.*;
 
 import com.vaadin.ui.*;
 import com.vaadin.ui.Field;
@@ -28,18 +30,53 @@ import com.vaadin.ui.Field;
  * @author Marlon Richert @ Vaadin
  */
 public abstract class Control<P extends Component, C> extends View<P> {
-    private C controller;
-    private Method removeListener;
-    private Method addListener;
+    /**
+     * Holds the listener methods of each component class, per listener type.
+     * The table is kept with the component class through a {@link ClassValue}
+     * and only holds the listener types for which that class has listener
+     * methods. Those are parameter types of the class's own methods, so they
+     * come from its class loader or one of its parents, and the table doesn't
+     * keep any loader that the component class doesn't keep already. This
+     * holds whether Jefferson and Vaadin are deployed with the application or
+     * in a shared parent loader. It is not keyed by listener type instead,
+     * since a shared listener interface would then keep the methods of
+     * application component classes.
+     */
+    private static final ClassValue<ConcurrentMap<Class<?>, ListenerMethods>> LISTENER_METHODS =
+            new ClassValue<ConcurrentMap<Class<?>, ListenerMethods>>() {
+        @Override
+        protected ConcurrentMap<Class<?>, ListenerMethods> computeValue(
+                Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The version of the serialized form written by {@link Control}.
+     */
+    private static final int SERIAL_FORMAT = 1;
+
+    private transient Class<C> controllerBase;
+    private transient C controller;
+    private transient ListenerMethods listenerMethods;
+    private transient boolean immediate = true;
 
     public Control(String name, Class<P> base, Class<C> controllerBase) {
-        super(name, base);
-        try {
-            removeListener = base.getMethod("removeListener", controllerBase);
-            addListener = base.getMethod("addListener", controllerBase);
-        } catch (NoSuchMethodException e) {
-            throw new IllegalArgumentException(e);
-        }
+        this(ViewTemplate.of(name, base), controllerBase);
+    }
+
+    /**
+     * Creates a new control that shares the given template with other views.
+     * 
+     * @see View#View(ViewTemplate)
+     */
+    public Control(ViewTemplate<P> template, Class<C> controllerBase) {
+        super(template);
+        this.controllerBase = controllerBase;
+        listenerMethods = ListenerMethods.of(template.getPresentationBase(),
+                controllerBase);
     }
 
     public Control(String name, Class<P> base, Class<C> listenerBase, C listener) {
@@ -58,6 +95,30 @@ public abstract class Control<P extends Component, C> extends View<P> {
         return controller;
     }
 
+    /**
+     * Sets whether this control's presentation sends changes to the server
+     * right away. Controls are immediate by default.
+     * 
+     * @see AbstractComponent#setImmediate(boolean)
+     */
+    public void setImmediate(boolean immediate) {
+        this.immediate = immediate;
+        P presentation = getPresentation();
+        if (presentation instanceof AbstractComponent) {
+            ((AbstractComponent) presentation).setImmediate(immediate);
+        }
+    }
+
+    /**
+     * Tells whether this control's presentation sends changes to the server
+     * right away.
+     * 
+     * @see #setImmediate(boolean)
+     */
+    public boolean isImmediate() {
+        return immediate;
+    }
+
     @Override
     protected P accept(Presenter presenter) {
         P presentation = super.accept(presenter);
@@ -72,34 +133,124 @@ public abstract class Control<P extends Component, C> extends View<P> {
     }
 
     private void removeListener(P presentation, C listener) {
-        try {
-            if (presentation != null && listener != null) {
-                removeListener.invoke(presentation, listener);
-            }
-        } catch (IllegalAccessException e) {
-            throw new RuntimeException(e);
-        } catch (InvocationTargetException e) {
-            throw new RuntimeException(e);
+        if (presentation != null && listener != null) {
+            detachListener(presentation, listener);
         }
     }
 
     private void addListener(P presentation, C listener) {
-        try {
-            if (presentation != null) {
-                if (presentation instanceof AbstractComponent) {
-                    ((AbstractComponent) presentation).setImmediate(true);
-                }
-                if (presentation instanceof Field) {
-                    ((Field) presentation).setWriteThrough(true);
-                }
-                if (listener != null) {
-                    addListener.invoke(presentation, listener);
-                }
+        if (presentation != null) {
+            if (presentation instanceof AbstractComponent) {
+                ((AbstractComponent) presentation).setImmediate(immediate);
+            }
+            if (presentation instanceof Field) {
+                ((Field) presentation).setWriteThrough(true);
+            }
+            if (listener != null) {
+                attachListener(presentation, listener);
+            }
+        }
+    }
+
+    /**
+     * Registers the given listener to the given presentation. By default, this
+     * calls the presentation's <code>addListener</code> method for this
+     * control's controller type. Subclasses can override this to call it
+     * directly.
+     */
+    protected void attachListener(P presentation, C listener) {
+        ListenerMethods.invoke(listenerMethods.add, presentation, listener);
+    }
+
+    /**
+     * Unregisters the given listener from the given presentation. By default,
+     * this calls the presentation's <code>removeListener</code> method for
+     * this control's controller type. Subclasses can override this to call it
+     * directly.
+     */
+    protected void detachListener(P presentation, C listener) {
+        ListenerMethods.invoke(listenerMethods.remove, presentation, listener);
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.writeByte(SERIAL_FORMAT);
+        out.writeObject(controllerBase);
+        out.writeObject(controller);
+        out.writeBoolean(immediate);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException,
+            ClassNotFoundException {
+        int format = in.readUnsignedByte();
+        if (format != SERIAL_FORMAT) {
+            throw new InvalidObjectException("Can't read serialized form "
+                    + format + " of " + Control.class.getName());
+        }
+        controllerBase = (Class<C>) in.readObject();
+        controller = (C) in.readObject();
+        immediate = in.readBoolean();
+        listenerMethods = ListenerMethods.of(getPresentationBase(),
+                controllerBase);
+    }
+
+    /**
+     * Method handles for the <code>addListener</code> and
+     * <code>removeListener</code> methods that a component class has for a
+     * listener type.
+     */
+    private final static class ListenerMethods {
+        private static final MethodType TYPE = MethodType.methodType(
+                void.class, Object.class, Object.class);
+
+        private final MethodHandle add;
+        private final MethodHandle remove;
+
+        /**
+         * Gets the shared listener methods of the given component class for
+         * the given listener type. Nothing is cached if the class has no such
+         * methods.
+         */
+        private static ListenerMethods of(Class<?> base, Class<?> listenerBase) {
+            ConcurrentMap<Class<?>, ListenerMethods> methods = LISTENER_METHODS
+                    .get(base);
+            ListenerMethods listenerMethods = methods.get(listenerBase);
+            if (listenerMethods == null) {
+                listenerMethods = new ListenerMethods(base, listenerBase);
+                methods.putIfAbsent(listenerBase, listenerMethods);
+            }
+            return listenerMethods;
+        }
+
+        private ListenerMethods(Class<?> base, Class<?> listenerBase) {
+            try {
+                add = find(base, "addListener", listenerBase);
+                remove = find(base, "removeListener", listenerBase);
+            } catch (NoSuchMethodException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+
+        private static MethodHandle find(Class<?> base, String name,
+                Class<?> listenerBase) throws NoSuchMethodException {
+            try {
+                return MethodHandles.publicLookup()
+                        .unreflect(base.getMethod(name, listenerBase))
+                        .asType(TYPE);
+            } catch (IllegalAccessException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+
+        private static void invoke(MethodHandle method, Object presentation,
+                Object listener) {
+            try {
+                method.invokeExact(presentation, listener);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new RuntimeException(e);
             }
-        } catch (IllegalAccessException e) {
-            throw new RuntimeException(e);
-        } catch (InvocationTargetException e) {
-            throw new RuntimeException(e);
         }
     }
 }
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2011, 2012 Vaadin Ltd.
+ * 
+ * Licensed under the GNU Affero General Public License, Version 3 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at
+ * 
+ * http://www.gnu.org/licenses/agpl.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.vaadin.jefferson;
+
+/**
+ * A statically compiled replacement for the reflective method lookup in
+ * {@link Presenter}. Subclasses are generated by
+ * {@link org.vaadin.jefferson.processor.DispatcherProcessor} and named after
+ * the presenter class they dispatch for, with the suffix
+ * {@value #SUFFIX}. When such a class exists for a presenter's exact runtime
+ * class, {@link Presenter#visit(View)} uses it instead of looking up methods
+ * by reflection.
+ * 
+ * @author Marlon Richert @ Vaadin
+ */
+public abstract class Dispatcher {
+
+    /**
+     * The suffix appended to a presenter's class name to get the name of its
+     * dispatcher class.
+     */
+    public static final String SUFFIX = "_Dispatcher";
+
+    /**
+     * Calls the presenter method with the given name that best matches the
+     * given view, in the same order in which {@link Presenter} would look it
+     * up by reflection.
+     * 
+     * @param methodName
+     *            The name of the method to call, such as <code>render</code>,
+     *            <code>style</code> or <code>renditionType</code>.
+     * @return The called method's return value, or <code>null</code> if it
+     *         does not return anything.
+     */
+    protected abstract Object call(String methodName, Presenter presenter,
+            View<?> view);
+
+    /**
+     * Calls the method with the given name that is declared by
+     * {@link Presenter} itself. Generated dispatchers call this after none of
+     * the methods declared by subclasses matched.
+     */
+    protected static Object callBase(String methodName, Presenter presenter,
+            View<?> view) {
+        switch (methodName) {
+        case "render":
+            presenter.render(view);
+            return null;
+        case "style":
+            presenter.style(view);
+            return null;
+        case "renditionType":
+            return presenter.renditionType(view);
+        default:
+            throw new ExceptionInInitializerError("Can't find any method "
+                    + presenter.getClass() + "." + methodName + "("
+                    + view.getClass() + ").");
+        }
+    }
+}
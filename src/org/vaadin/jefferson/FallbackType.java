@@ -0,0 +1,35 @@
+/*
+ * Copyright 2011, 2012 Vaadin Ltd.
+ * 
+ * Licensed under the GNU Affero General Public License, Version 3 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at
+ * 
+ * http://www.gnu.org/licenses/agpl.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.vaadin.jefferson;
+
+import java.lang.annotation.*;
+
+import com.vaadin.ui.Component;
+
+/**
+ * Declares the class of the component that a {@link View#createFallback()}
+ * implementation returns, so that presenters can tell what a view's rendition
+ * would be without rendering it.
+ * 
+ * @see View#getFallbackType()
+ * @author Marlon Richert @ Vaadin
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface FallbackType {
+    Class<? extends Component> value();
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2011, 2012 Vaadin Ltd.
+ * 
+ * Licensed under the GNU Affero General Public License, Version 3 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at
+ * 
+ * http://www.gnu.org/licenses/agpl.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.vaadin.jefferson;
+
+/**
+ * Receives measurements of presentation passes from a {@link Presenter}.
+ * Subclasses override the methods for the measurements they are interested
+ * in, and export them to a metrics system of their choice. All methods do
+ * nothing by default.
+ * <p>
+ * Presenters only read the clock if their metrics are not {@link #NONE}, so
+ * leaving metrics unset costs next to nothing.
+ * 
+ * @see Presenter#setMetrics(PresentationMetrics)
+ * @author Marlon Richert @ Vaadin
+ */
+public abstract class PresentationMetrics {
+
+    /**
+     * The phases of {@link Presenter#visit(View)} that are timed for each
+     * view.
+     */
+    public enum Phase {
+        /**
+         * Creating or reusing the view's rendition.
+         */
+        RENDER,
+
+        /**
+         * {@link View#accept(Presenter)}, which for composites includes
+         * visiting their children.
+         */
+        ACCEPT,
+
+        /**
+         * Styling the view's rendition.
+         */
+        STYLE,
+
+        /**
+         * Adding the view's style name to its rendition.
+         */
+        STYLE_NAME,
+    }
+
+    /**
+     * Metrics that ignore all measurements. This is the default.
+     */
+    public static final PresentationMetrics NONE = new PresentationMetrics() {
+    };
+
+    /**
+     * Called after a phase of presenting a view has finished.
+     * 
+     * @param viewType
+     *            The class of the view that was presented.
+     * @param nanos
+     *            The time the phase took, in nanoseconds.
+     */
+    public void phaseFinished(Phase phase, Class<?> viewType, long nanos) {
+    }
+
+    /**
+     * Called after the outermost call to {@link Presenter#visit(View)} or
+     * {@link Presenter#presentDeferred(Composite)} has returned.
+     * 
+     * @param nanos
+     *            The time the whole pass took, in nanoseconds.
+     */
+    public void passFinished(long nanos) {
+    }
+
+    /**
+     * Called when a presentation has been created through
+     * {@link View#createFallback()}.
+     */
+    public void fallbackCreated(Class<?> viewType) {
+    }
+
+    /**
+     * Called when a component has been added to, removed from or replaced in
+     * a composite's presentation.
+     * 
+     * @param compositeType
+     *            The class of the composite.
+     */
+    public void containerUpdated(Class<?> compositeType) {
+    }
+}
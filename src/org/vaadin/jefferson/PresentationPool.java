@@ -0,0 +1,345 @@
+/*
+ * Copyright 2011, 2012 Vaadin Ltd.
+ * 
+ * Licensed under the GNU Affero General Public License, Version 3 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at
+ * 
+ * http://www.gnu.org/licenses/agpl.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.vaadin.jefferson;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.*;
+
+import com.vaadin.data.Property;
+import com.vaadin.ui.*;
+import com.vaadin.ui.Field;
+
+/**
+ * Keeps the presentations of released view subtrees, so that a presenter can
+ * reuse them for structurally identical subtrees instead of creating new
+ * ones. Two subtrees are structurally identical if their views have the same
+ * classes and templates, and their composites have the same number of
+ * children, recursively.
+ * <p>
+ * The pool holds a bounded number of presentation trees. When it is full, the
+ * least recently used tree is evicted. The pool keeps count of hits, misses
+ * and evictions. Since presentations are styled by the presenter that
+ * rendered them, a pool should only be shared between presenters of the same
+ * kind.
+ * 
+ * @see Presenter#setPresentationPool(PresentationPool)
+ * @see Presenter#release(View)
+ * @author Marlon Richert @ Vaadin
+ */
+public class PresentationPool {
+    private final int capacity;
+
+    /**
+     * The pooled presentation trees of each shape, in the post-order of their
+     * views, with the least recently used shape first.
+     */
+    private final LinkedHashMap<Shape, Deque<Component[]>> trees = new LinkedHashMap<>(
+            16, 0.75f, true);
+
+    /**
+     * The number of pooled trees whose root view has each template, so that
+     * most misses can be told apart without computing any shape.
+     */
+    private final Map<ViewTemplate<?>, Integer> roots = new IdentityHashMap<>();
+
+    private int size;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Creates a new pool.
+     * 
+     * @param capacity
+     *            The maximum number of presentation trees to keep.
+     */
+    public PresentationPool(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive.");
+        }
+        this.capacity = capacity;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Gets the number of presentation trees in this pool.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Gets the number of times that a view's presentations were taken from
+     * this pool.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Gets the number of times that this pool had no presentations for a
+     * view.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Gets the number of presentation trees that were dropped, because this
+     * pool was full.
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Drops all pooled presentation trees.
+     */
+    public synchronized void clear() {
+        trees.clear();
+        roots.clear();
+        size = 0;
+    }
+
+    /**
+     * Gets the presentations of the given view and its descendants, in
+     * post-order.
+     */
+    static Component[] collect(View<?> view) {
+        List<Component> presentations = new ArrayList<>();
+        collect(view, presentations);
+        return presentations.toArray(new Component[presentations.size()]);
+    }
+
+    /**
+     * Adds the given presentations, which were
+     * {@link #collect(View) collected} from the given view before they were
+     * taken away from it, to this pool after {@link #reset(Component)
+     * resetting} them.
+     */
+    synchronized void offer(View<?> view, Component[] presentations) {
+        for (Component presentation : presentations) {
+            if (presentation != null) {
+                reset(presentation);
+            }
+        }
+        Shape shape = Shape.of(view);
+        Deque<Component[]> deque = trees.get(shape);
+        if (deque == null) {
+            deque = new ArrayDeque<>();
+            trees.put(shape, deque);
+        }
+        deque.push(presentations);
+        count(view.getTemplate(), 1);
+        size++;
+        while (size > capacity) {
+            evict();
+        }
+    }
+
+    /**
+     * Lets the given view and its descendants adopt pooled presentations, if
+     * there are any for its shape.
+     * 
+     * @return <code>true</code> if this was a hit; otherwise,
+     *         <code>false</code>.
+     */
+    synchronized boolean reuse(View<?> view) {
+        Component[] presentations = null;
+        if (roots.containsKey(view.getTemplate())) {
+            Shape shape = Shape.of(view);
+            Deque<Component[]> deque = trees.get(shape);
+            if (deque != null) {
+                presentations = deque.pop();
+                if (deque.isEmpty()) {
+                    trees.remove(shape);
+                }
+                count(view.getTemplate(), -1);
+                size--;
+            }
+        }
+        if (presentations == null) {
+            misses++;
+            return false;
+        }
+        hits++;
+        adopt(view, presentations, 0);
+        return true;
+    }
+
+    /**
+     * Resets the state of a pooled component, so that nothing of the subtree
+     * that it was taken from leaks into the one that reuses it. By default,
+     * this clears the errors of components, the listeners registered with
+     * them, the data sources and values of fields, and the items of selects.
+     * The content of labels is kept: it is derived from the names of the views
+     * that created them, which are the same for any view that reuses them.
+     * Subclasses can override this to reset more.
+     */
+    protected void reset(Component component) {
+        if (component instanceof AbstractComponent) {
+            ((AbstractComponent) component).setComponentError(null);
+            removeListeners((AbstractComponent) component);
+        }
+        if (component instanceof AbstractSelect) {
+            ((AbstractSelect) component).setContainerDataSource(null);
+        }
+        if (component instanceof AbstractField) {
+            ((AbstractField) component).setPropertyDataSource(null);
+        }
+        if (component instanceof Field && !((Field) component).isReadOnly()) {
+            try {
+                ((Field) component).setValue(null);
+            } catch (Property.ConversionException e) {
+                // Keep the value.
+            }
+        }
+    }
+
+    /**
+     * Removes the given component's listeners through its
+     * <code>removeListener</code> methods for the listener types that each of
+     * them implements, so that the component also stops sending their events.
+     */
+    private static void removeListeners(AbstractComponent component) {
+        Collection<?> listeners = component.getListeners(Component.Event.class);
+        if (listeners.isEmpty()) {
+            return;
+        }
+        for (Method method : component.getClass().getMethods()) {
+            Class<?>[] parameterTypes = method.getParameterTypes();
+            if (!"removeListener".equals(method.getName())
+                    || parameterTypes.length != 1) {
+                continue;
+            }
+            for (Object listener : listeners) {
+                if (parameterTypes[0].isInstance(listener)) {
+                    try {
+                        method.invoke(component, listener);
+                    } catch (IllegalAccessException e) {
+                        throw new IllegalStateException(e);
+                    } catch (InvocationTargetException e) {
+                        throw new IllegalStateException(e.getCause());
+                    }
+                }
+            }
+        }
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<Shape, Deque<Component[]>>> eldest = trees
+                .entrySet().iterator();
+        Map.Entry<Shape, Deque<Component[]>> entry = eldest.next();
+        entry.getValue().removeLast();
+        if (entry.getValue().isEmpty()) {
+            eldest.remove();
+        }
+        count(entry.getKey().template, -1);
+        size--;
+        evictions++;
+    }
+
+    private void count(ViewTemplate<?> template, int delta) {
+        Integer count = roots.get(template);
+        int newCount = (count == null ? 0 : count) + delta;
+        if (newCount == 0) {
+            roots.remove(template);
+        } else {
+            roots.put(template, newCount);
+        }
+    }
+
+    private static void collect(View<?> view, List<Component> presentations) {
+        if (view instanceof Composite<?>) {
+            Composite<?> composite = (Composite<?>) view;
+            for (int i = 0; i < composite.getChildCount(); i++) {
+                collect(composite.getChild(i), presentations);
+            }
+        }
+        presentations.add(view.getPresentation());
+    }
+
+    /**
+     * Adopts the given presentations in post-order, so that each composite
+     * only adopts its presentation after its children, which are already in
+     * it.
+     */
+    private static int adopt(View<?> view, Component[] presentations, int index) {
+        if (view instanceof Composite<?>) {
+            Composite<?> composite = (Composite<?>) view;
+            for (int i = 0; i < composite.getChildCount(); i++) {
+                index = adopt(composite.getChild(i), presentations, index);
+            }
+        }
+        Component presentation = presentations[index];
+        if (presentation != null) {
+            view.adopt(presentation);
+        }
+        return index + 1;
+    }
+
+    /**
+     * The structure of a view subtree.
+     */
+    private static final class Shape {
+        private static final Shape[] LEAF = {};
+
+        private final Class<?> viewClass;
+        private final ViewTemplate<?> template;
+        private final Shape[] children;
+        private final int hash;
+
+        private Shape(View<?> view) {
+            viewClass = view.getClass();
+            template = view.getTemplate();
+            if (view instanceof Composite<?>) {
+                Composite<?> composite = (Composite<?>) view;
+                children = new Shape[composite.getChildCount()];
+                for (int i = 0; i < children.length; i++) {
+                    children[i] = new Shape(composite.getChild(i));
+                }
+            } else {
+                children = LEAF;
+            }
+            hash = 31 * (31 * viewClass.hashCode() + template.hashCode())
+                    + Arrays.hashCode(children);
+        }
+
+        private static Shape of(View<?> view) {
+            return new Shape(view);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Shape)) {
+                return false;
+            }
+            Shape other = (Shape) obj;
+            return hash == other.hash && viewClass == other.viewClass
+                    && template == other.template
+                    && Arrays.equals(children, other.children);
+        }
+    }
+}
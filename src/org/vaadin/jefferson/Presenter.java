@@ -1,5 +1,5 @@
 /*
- * Copyright 2011 Vaadin Ltd.
+ * Copyright 2011, 2012 Vaadin Ltd.
  * 
  * Licensed under the GNU Affero General Public License, Version 3 (the 
  * "License"); you may not use this file except in compliance with the License. 
@@ -15,8 +15,16 @@
  */
 package org.vaadin.jefferson;
 
+import java.io.*;
+import java.lang.invoke.*;
+import java.lang.ref.*;
 import java.lang.reflect.*;
 import java.security.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.vaadin.jefferson.PresentationMetrics.Phase;
 
 import com.vaadin.ui.*;
 
@@ -31,16 +39,46 @@ import com.vaadin.ui.*;
  * <pre>
  *      Component render(T view)
  *      void style(T view)
+ *      Class&lt;? extends Component&gt; renditionType(T view)
  * </pre>
+ * <p>
+ * A <code>renditionType</code> method tells which class of component the
+ * <code>render</code> method with the same parameter type would create,
+ * without creating it. It is only consulted for views handled by a
+ * <code>render</code> method declared in the same class.
+ * <p>
+ * These methods are resolved once per presenter and view class and then
+ * invoked through {@link MethodHandle}s. If a {@link Dispatcher} has been
+ * generated for the presenter's class, it is used instead and no reflection
+ * takes place at all. To compare against plain reflective invocation, start
+ * the JVM with <code>-Dorg.vaadin.jefferson.reflectiveDispatch=true</code>.
+ * <p>
+ * A presenter may be shared by several sessions. The state of a presentation
+ * pass, such as the metrics it reports to, is kept per thread, and handed on
+ * to the threads that present its forked subtrees.
+ * <p>
+ * Presenters are serialized along with the views they present. Their metrics,
+ * pool and presentation pool belong to the server they run on, so they are
+ * not serialized and have to be set again after deserialization.
  * 
  * @author Marlon Richert @ Vaadin
  */
-public class Presenter {
+public class Presenter implements Serializable {
+    private static final long serialVersionUID = 1L;
 
     protected enum MethodName {
-        RENDER, STYLE;
+        RENDER, STYLE, RENDITION_TYPE;
+
+        private String camelCase;
 
         public String toCamelCase() {
+            if (camelCase == null) {
+                camelCase = computeCamelCase();
+            }
+            return camelCase;
+        }
+
+        private String computeCamelCase() {
             String[] tokens = toString().split("_");
             StringBuilder builder = new StringBuilder(tokens[0].toLowerCase());
             for (int i = 1; i < tokens.length; i++) {
@@ -51,8 +89,188 @@ public class Presenter {
         }
     }
 
-    private static final String INVALID_CSS = "[^-_a-zA-Z]";
-    private static final String WHITESPACE = "\\s+";
+    private static final boolean REFLECTIVE_DISPATCH = Boolean
+            .getBoolean("org.vaadin.jefferson.reflectiveDispatch");
+
+    /**
+     * Resolves, per presenter class, which method to call for each
+     * {@link MethodName} and view class. The tables are kept with the
+     * presenter classes through a {@link ClassValue}, so that they are
+     * discarded together with the presenter's class loader.
+     * 
+     * @see DispatchTable
+     */
+    private static final ClassValue<DispatchTable> DISPATCH_TABLES = new ClassValue<DispatchTable>() {
+        @Override
+        protected DispatchTable computeValue(Class<?> presenterCls) {
+            return new DispatchTable(presenterCls);
+        }
+    };
+
+    /**
+     * Holds the generated {@link Dispatcher} for each presenter class, or
+     * <code>null</code> if there is none.
+     */
+    private static final ClassValue<Dispatcher> DISPATCHERS = new ClassValue<Dispatcher>() {
+        @Override
+        protected Dispatcher computeValue(Class<?> presenterCls) {
+            try {
+                return (Dispatcher) Class.forName(
+                        presenterCls.getName() + Dispatcher.SUFFIX, true,
+                        presenterCls.getClassLoader()).newInstance();
+            } catch (ClassNotFoundException e) {
+                return null;
+            } catch (InstantiationException e) {
+                throw new ExceptionInInitializerError(e);
+            } catch (IllegalAccessException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+    };
+
+    private boolean reconciling;
+    private transient PresentationMetrics metrics = PresentationMetrics.NONE;
+
+    private transient ForkJoinPool pool;
+    private transient PresentationPool presentationPool;
+
+    /**
+     * The presentation pass that each thread is taking part in, so that
+     * passes of different sessions sharing this presenter don't see each
+     * other's state.
+     */
+    private transient ThreadLocal<Pass> passes = new ThreadLocal<>();
+
+    /**
+     * Sets whether this presenter reuses existing presentations. When
+     * reconciling, {@link #visit(View)} only renders a view again if it has
+     * no presentation yet or if this presenter would render it as a different
+     * class of component. Views whose rendition type can't be determined are
+     * always rendered again. In addition,
+     * {@link Composite#setChildren(View...)} lets new children take over the
+     * presentations of outgoing children with the same class and name.
+     * 
+     * @see #renditionType(View)
+     */
+    public void setReconciling(boolean reconciling) {
+        this.reconciling = reconciling;
+    }
+
+    /**
+     * Tells whether this presenter reuses existing presentations.
+     * 
+     * @see #setReconciling(boolean)
+     */
+    public boolean isReconciling() {
+        return reconciling;
+    }
+
+    /**
+     * Sets the metrics that this presenter reports its presentation passes
+     * to. A change takes effect at the start of the next pass.
+     * 
+     * @param metrics
+     *            The metrics to report to, or {@link PresentationMetrics#NONE}
+     *            to stop measuring.
+     */
+    public void setMetrics(PresentationMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public PresentationMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the pool on which this presenter presents sibling subtrees in
+     * parallel. When a composite is visited, each of its child composites
+     * whose presentation is not attached to an application yet is rendered
+     * and accepted in a task of its own on the pool, while the parent's
+     * presentation is left alone. Other
+     * children, such as leaves and attached composites, are presented on the
+     * thread that visits the parent in the meantime. Once the tasks are done,
+     * that thread adds the children's presentations to the parent's in order
+     * and styles them.
+     * <p>
+     * Forked subtrees are presented on pool threads, which do not hold the
+     * application lock, even when presenting starts on a Vaadin request
+     * thread. This is safe for their components, which are not attached to
+     * any application yet, but presenters used in parallel must only share
+     * state between views in a thread-safe manner, and so must their
+     * {@link #setMetrics(PresentationMetrics) metrics}.
+     * 
+     * @param pool
+     *            The pool to use, or <code>null</code> to present
+     *            sequentially, which is the default.
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Sets the pool to which {@link #release(View)} returns presentations.
+     * When reconciling, this presenter lets views without a presentation
+     * adopt pooled presentations of a structurally identical subtree, before
+     * deciding whether to render them.
+     * 
+     * @param presentationPool
+     *            The pool to use, or <code>null</code> to not pool
+     *            presentations, which is the default.
+     * @see #setReconciling(boolean)
+     */
+    public void setPresentationPool(PresentationPool presentationPool) {
+        this.presentationPool = presentationPool;
+    }
+
+    public PresentationPool getPresentationPool() {
+        return presentationPool;
+    }
+
+    /**
+     * Takes the presentations of the given view and its descendants away from
+     * them, removing the view's presentation from its parent's, and returns
+     * them to this presenter's {@link #setPresentationPool(PresentationPool)
+     * presentation pool}, if it has one. The presentation tree is kept intact,
+     * so that it can be reused as a whole.
+     */
+    public void release(View<?> view) {
+        if (view.getPresentation() == null) {
+            return;
+        }
+        PresentationPool presentationPool = this.presentationPool;
+        Component[] presentations = presentationPool == null ? null
+                : PresentationPool.collect(view);
+        List<Composite<?>> composites = new ArrayList<>();
+        collectComposites(view, composites);
+        for (Composite<?> composite : composites) {
+            composite.suspendUpdates();
+        }
+        try {
+            view.setPresentation(null);
+        } finally {
+            for (Composite<?> composite : composites) {
+                composite.resumeUpdates();
+            }
+        }
+        if (presentationPool != null) {
+            presentationPool.offer(view, presentations);
+        }
+    }
+
+    private static void collectComposites(View<?> view,
+            List<Composite<?>> composites) {
+        if (view instanceof Composite<?>) {
+            Composite<?> composite = (Composite<?>) view;
+            composites.add(composite);
+            for (int i = 0; i < composite.getChildCount(); i++) {
+                collectComposites(composite.getChild(i), composites);
+            }
+        }
+    }
 
     /**
      * Renders the given view, calls {@link View#accept(Presenter)} and then
@@ -63,24 +281,382 @@ public class Presenter {
      * @return The view's new rendition.
      */
     public <T extends Component> T visit(View<T> view) {
-        call(MethodName.RENDER, view);
-        T rendition = view.getPresentation();
+        enterPass();
+        try {
+            present(view);
+            return finish(view);
+        } finally {
+            exitPass();
+        }
+    }
+
+    /**
+     * Renders the given view and calls {@link View#accept(Presenter)}.
+     */
+    private void present(View<?> view) {
+        PresentationMetrics passMetrics = currentMetrics();
+        boolean measuring = passMetrics != PresentationMetrics.NONE;
+        long time = measuring ? System.nanoTime() : 0;
+
+        if (reconciling && presentationPool != null
+                && view.getPresentation() == null) {
+            presentationPool.reuse(view);
+        }
+        if (!reconciling || !isCurrent(view)) {
+            call(MethodName.RENDER, view);
+        }
+        if (measuring) {
+            time = measure(passMetrics, Phase.RENDER, view, time);
+        }
 
         view.accept(this);
+        if (measuring) {
+            measure(passMetrics, Phase.ACCEPT, view, time);
+        }
+    }
+
+    /**
+     * Styles the given view's rendition, which must be attached to its
+     * parent's by now.
+     */
+    private <T extends Component> T finish(View<T> view) {
+        PresentationMetrics passMetrics = currentMetrics();
+        boolean measuring = passMetrics != PresentationMetrics.NONE;
+        long time = measuring ? System.nanoTime() : 0;
+        T rendition = view.getPresentation();
 
         call(MethodName.STYLE, view);
-        rendition.addStyleName(view.getName().replaceAll(
-                WHITESPACE, "-").replaceAll(INVALID_CSS, "").toLowerCase());
+        view.setLayoutFacts(layoutFacts(view));
+        view.clean();
+        if (measuring) {
+            time = measure(passMetrics, Phase.STYLE, view, time);
+        }
 
+        rendition.addStyleName(view.getStyleName());
+        if (measuring) {
+            measure(passMetrics, Phase.STYLE_NAME, view, time);
+        }
         return rendition;
     }
 
+    /**
+     * Brings the presentations of the changed views in the given subtree up to
+     * date with as little work as possible. Views are marked as changed when
+     * a composite's children are replaced, added or removed. Each changed
+     * view is styled again, and so is each ancestor, until one is reached
+     * whose {@link #layoutFacts(View) layout facts} stayed the same. Children
+     * without presentations are presented first. Only views whose rendition
+     * is known to be of another type than {@link #renditionType(View)} are
+     * visited again instead; if the type is unknown, the rendition is kept.
+     * <p>
+     * After {@link Composite#replaceChild(View, View)}, this is done
+     * automatically for the whole tree.
+     */
+    public void restyle(View<?> view) {
+        enterPass();
+        try {
+            restyleChanged(view);
+        } finally {
+            exitPass();
+        }
+    }
+
+    /**
+     * Restyles the changed views in the given subtree, children first.
+     * 
+     * @return <code>true</code> if the given view's layout facts or rendition
+     *         type changed, so that its parent needs to be restyled as well.
+     */
+    private boolean restyleChanged(View<?> view) {
+        boolean affected = view.isChanged();
+        if (view.hasChangedDescendants() && view instanceof Composite<?>) {
+            Composite<?> composite = (Composite<?>) view;
+            for (int i = 0; i < composite.getChildCount(); i++) {
+                affected |= restyleChanged(composite.getChild(i));
+            }
+        }
+        view.clean();
+        if (!affected || view.getPresentation() == null) {
+            return false;
+        }
+        if (isStale(view)) {
+            Component old = view.getPresentation();
+            visit(view);
+            return view.getPresentation() != old;
+        }
+        if (view instanceof Composite<?>) {
+            Composite<?> composite = (Composite<?>) view;
+            List<View<?>> unpresented = unpresentedChildren(composite);
+            if (!unpresented.isEmpty()) {
+                presentChildren(composite, unpresented);
+            }
+        }
+        Object facts = view.getLayoutFacts();
+        finish(view);
+        Object newFacts = view.getLayoutFacts();
+        return facts == null ? newFacts != null : !facts.equals(newFacts);
+    }
+
+    /**
+     * Tells whether the given view's rendition is known to be of another type
+     * than it would be rendered as now. If this presenter can't tell the type,
+     * the rendition is kept.
+     */
+    private boolean isStale(View<?> view) {
+        Object type = call(MethodName.RENDITION_TYPE, view);
+        return type != null && getRendition(view).getClass() != type;
+    }
+
+    private static List<View<?>> unpresentedChildren(Composite<?> composite) {
+        if (composite.isDeferred()) {
+            return Collections.emptyList();
+        }
+        List<View<?>> unpresented = new ArrayList<>();
+        for (int i = 0; i < composite.getChildCount(); i++) {
+            View<?> child = composite.getChild(i);
+            if (child.getPresentation() == null) {
+                unpresented.add(child);
+            }
+        }
+        return unpresented;
+    }
+
+    /**
+     * Presents the given children of the given composite, adding their
+     * presentations to the composite's in one update before they are styled.
+     * The composite's own presentation is left as it is.
+     */
+    private void presentChildren(Composite<?> composite,
+            List<View<?>> children) {
+        composite.suspendUpdates();
+        try {
+            for (View<?> child : children) {
+                present(child);
+            }
+        } finally {
+            composite.resumeUpdates();
+        }
+        for (View<?> child : children) {
+            finish(child);
+        }
+    }
+
+    /**
+     * Restyles the tree containing the given composite, after its children
+     * have changed, unless this thread is already taking part in a
+     * presentation pass.
+     */
+    void restyleTree(Composite<?> composite) {
+        if (passes.get() != null) {
+            return;
+        }
+        restyle(rootOf(composite));
+    }
+
+    private static View<?> rootOf(View<?> view) {
+        View<?> root = view;
+        while (root.getParent() != null) {
+            root = root.getParent();
+        }
+        return root;
+    }
+
+    /**
+     * Visits each of the given composite's children, in parallel if this
+     * presenter has a {@link #setPool(ForkJoinPool) pool} and more than one of
+     * the children is a composite that can be presented off this thread. Only
+     * those are forked; the other children are presented on the calling
+     * thread while the forked ones run, and all of them are styled on the
+     * calling thread once the forked ones have been joined.
+     */
+    void visitChildren(Composite<?> composite) {
+        int childCount = composite.getChildCount();
+        boolean[] forked = new boolean[childCount];
+        int forkable = 0;
+        if (pool != null) {
+            for (int i = 0; i < childCount; i++) {
+                forked[i] = isForkable(composite.getChild(i));
+                if (forked[i]) {
+                    forkable++;
+                }
+            }
+        }
+        if (forkable < 2) {
+            for (int i = 0; i < childCount; i++) {
+                visit(composite.getChild(i));
+            }
+            return;
+        }
+
+        List<ForkJoinTask<?>> subtrees = new ArrayList<>(forkable);
+        composite.suspendUpdates();
+        try {
+            try {
+                for (int i = 0; i < childCount; i++) {
+                    if (forked[i]) {
+                        subtrees.add(fork(composite.getChild(i)));
+                    }
+                }
+                for (int i = 0; i < childCount; i++) {
+                    if (!forked[i]) {
+                        present(composite.getChild(i));
+                    }
+                }
+            } finally {
+                for (ForkJoinTask<?> subtree : subtrees) {
+                    subtree.join();
+                }
+            }
+        } finally {
+            composite.resumeUpdates();
+        }
+        for (int i = 0; i < childCount; i++) {
+            finish(composite.getChild(i));
+        }
+    }
+
+    /**
+     * Presents the given detached subtree on this presenter's pool.
+     */
+    private ForkJoinTask<?> fork(final View<?> subtree) {
+        final Pass pass = passes.get();
+        RecursiveAction task = new RecursiveAction() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected void compute() {
+                // The caller's pass lasts until it has joined this task.
+                Pass previous = passes.get();
+                passes.set(pass);
+                try {
+                    present(subtree);
+                } finally {
+                    if (previous == null) {
+                        passes.remove();
+                    } else {
+                        passes.set(previous);
+                    }
+                }
+            }
+        };
+        return ForkJoinTask.inForkJoinPool() ? task.fork() : pool.submit(task);
+    }
+
+    /**
+     * Presents the given views, which have just been appended to the given
+     * composite's children, in a single pass. Their presentations are added
+     * to the composite's in one update before they are styled, after which
+     * the composite and its affected ancestors are restyled.
+     * 
+     * @see TreeBuilder#present(Presenter)
+     */
+    void presentAppended(Composite<?> composite, List<View<?>> appended) {
+        childrenChanged(composite);
+        if (composite.isDeferred()) {
+            return;
+        }
+        enterPass();
+        try {
+            presentChildren(composite, appended);
+            composite.markChanged();
+            restyleChanged(rootOf(composite));
+        } finally {
+            exitPass();
+        }
+    }
+
+    private static boolean isForkable(View<?> view) {
+        if (!(view instanceof Composite<?>)) {
+            return false;
+        }
+        Component presentation = view.getPresentation();
+        return presentation == null || presentation.getApplication() == null;
+    }
+
+    private static long measure(PresentationMetrics passMetrics, Phase phase,
+            View<?> view, long start) {
+        long now = System.nanoTime();
+        passMetrics.phaseFinished(phase, view.getClass(), now - start);
+        return now;
+    }
+
+    /**
+     * Gets the metrics that this thread's presentation pass reports to, or the
+     * ones set now if it takes part in no pass, so that a pass reports all of
+     * its measurements to the same metrics.
+     */
+    PresentationMetrics currentMetrics() {
+        Pass pass = passes.get();
+        return pass == null ? metrics : pass.metrics;
+    }
+
+    private void enterPass() {
+        Pass pass = passes.get();
+        if (pass == null) {
+            pass = new Pass(metrics);
+            passes.set(pass);
+        }
+        pass.depth.incrementAndGet();
+    }
+
+    private void exitPass() {
+        Pass pass = passes.get();
+        if (pass.depth.decrementAndGet() == 0) {
+            passes.remove();
+            passFinished();
+            if (pass.metrics != PresentationMetrics.NONE) {
+                pass.metrics.passFinished(System.nanoTime() - pass.start);
+            }
+        }
+    }
+
+    /**
+     * Called when the outermost call to {@link #visit(View)} or
+     * {@link #presentDeferred(Composite)} on a thread returns. Presenters that
+     * cache facts for the duration of a presentation pass should discard them
+     * here. Since passes of different threads may overlap, only facts that can
+     * be found again should be cached this way.
+     */
+    protected void passFinished() {
+    }
+
+    /**
+     * Presents the children of the given lazy composite, if that has been
+     * deferred so far, and then styles the composite again to take them into
+     * account.
+     * 
+     * @see Composite#setLazy(boolean)
+     */
+    public void presentDeferred(Composite<?> composite) {
+        if (composite.isDeferred() && getRendition(composite) != null) {
+            enterPass();
+            try {
+                composite.presentDeferred(this);
+                call(MethodName.STYLE, composite);
+            } finally {
+                exitPass();
+            }
+        }
+    }
+
     /**
      * Sets the given view's {@link View#createFallback()} method and sets its
      * rendition to the result.
      */
     protected <T extends Component> void render(View<T> view) {
-        setRendition(view, view.createFallback());
+        T fallback = view.createFallback();
+        currentMetrics().fallbackCreated(view.getClass());
+        setRendition(view, fallback);
+    }
+
+    /**
+     * Returns the type of the given view's fallback presentation, if the view
+     * declares it.
+     * 
+     * @see View#getFallbackType()
+     */
+    protected Class<? extends Component> renditionType(View<?> view) {
+        return view.getFallbackType();
     }
 
     /**
@@ -98,6 +674,51 @@ public class Presenter {
         return view == null ? null : view.getPresentation();
     }
 
+    private boolean isCurrent(View<?> view) {
+        Component rendition = getRendition(view);
+        return rendition != null
+                && rendition.getClass() == call(MethodName.RENDITION_TYPE, view);
+    }
+
+    /**
+     * Gets the class of the given view's rendition, without rendering it if
+     * it does not have one yet.
+     * 
+     * @return <code>null</code>, if the view has no rendition and this
+     *         presenter can't tell what it would be.
+     */
+    @SuppressWarnings("unchecked")
+    protected <T extends Component> Class<? extends T> getRenditionType(
+            View<T> view) {
+        T rendition = getRendition(view);
+        if (rendition != null) {
+            return (Class<? extends T>) rendition.getClass();
+        }
+        return (Class<? extends T>) call(MethodName.RENDITION_TYPE, view);
+    }
+
+    /**
+     * Called when the children of the given composite, which this presenter
+     * has visited, have been changed. Presenters that cache facts about a
+     * view's descendants should discard them here for the composite and its
+     * ancestors.
+     */
+    protected void childrenChanged(Composite<?> composite) {
+    }
+
+    /**
+     * Returns the facts about the given view that its parent's style depends
+     * on, such as its rendition type or whether it stretches, in a form that
+     * can be compared with {@link Object#equals(Object)}. These are recorded
+     * whenever a view is styled, so that {@link #restyle(View)} can tell
+     * whether a change needs to be propagated to the view's parent. By
+     * default, there are no such facts, so that only the changed views
+     * themselves are restyled.
+     */
+    protected Object layoutFacts(View<?> view) {
+        return null;
+    }
+
     /**
      * Convenience method for setting the rendition's expand ratio to 1.
      * 
@@ -111,21 +732,86 @@ public class Presenter {
         }
     }
 
+    /**
+     * Turns the given view name into a CSS class name by replacing each run of
+     * whitespace with a dash, dropping any characters that are not dashes,
+     * underscores or ASCII letters, and converting the result to lower case.
+     */
+    static String toStyleName(String name) {
+        StringBuilder builder = new StringBuilder(name.length());
+        boolean whitespace = false;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == ' ' || c == '\t' || c == '\n' || c == '\u000B'
+                    || c == '\f' || c == '\r') {
+                if (!whitespace) {
+                    builder.append('-');
+                }
+                whitespace = true;
+                continue;
+            }
+            whitespace = false;
+            if (c == '-' || c == '_' || (c >= 'a' && c <= 'z')
+                    || (c >= 'A' && c <= 'Z')) {
+                builder.append(c);
+            }
+        }
+        return builder.toString().toLowerCase();
+    }
+
     protected Object call(MethodName methodName, View<?> view) {
-        Method method = getMethod(methodName.toCamelCase(), view);
+        if (!REFLECTIVE_DISPATCH) {
+            Dispatcher dispatcher = DISPATCHERS.get(getClass());
+            if (dispatcher != null) {
+                return dispatcher.call(methodName.toCamelCase(), this, view);
+            }
+        }
+        Dispatch dispatch = getDispatch(methodName, view);
+        if (dispatch == Dispatch.UNKNOWN) {
+            return null;
+        }
+        if (REFLECTIVE_DISPATCH) {
+            try {
+                return dispatch.method.invoke(this, view);
+            } catch (IllegalAccessException e) {
+                throw new ExceptionInInitializerError(e);
+            } catch (InvocationTargetException e) {
+                throw rethrow(e.getCause());
+            }
+        }
         try {
-            return method.invoke(this, view);
-        } catch (IllegalAccessException e) {
-            throw new ExceptionInInitializerError(e);
-        } catch (InvocationTargetException e) {
-            throw new ExceptionInInitializerError(e);
+            return (Object) dispatch.handle.invokeExact(this, view);
+        } catch (Throwable e) {
+            throw rethrow(e);
         }
     }
 
-    private Method getMethod(String name, View<?> view) {
-        Class<?> presentationCls = getClass();
+    /**
+     * Rethrows an exception thrown by a presenter method the same way,
+     * whichever way the method was called: unchecked exceptions as they are,
+     * and checked ones wrapped, as a generated {@link Dispatcher} can't throw
+     * them either.
+     */
+    private static Error rethrow(Throwable e) {
+        if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        }
+        if (e instanceof Error) {
+            throw (Error) e;
+        }
+        throw new ExceptionInInitializerError(e);
+    }
+
+    private Dispatch getDispatch(MethodName methodName, View<?> view) {
+        return DISPATCH_TABLES.get(getClass()).get(methodName,
+                view.getClass());
+    }
+
+    private static Method findMethod(Class<?> presenterCls, String name,
+            Class<?> viewClass) {
+        Class<?> presentationCls = presenterCls;
         while (presentationCls != null) {
-            Class<?> viewCls = view.getClass();
+            Class<?> viewCls = viewClass;
             while (viewCls != null) {
                 try {
                     Method method = presentationCls.getDeclaredMethod(
@@ -139,7 +825,130 @@ public class Presenter {
             presentationCls = presentationCls.getSuperclass();
         }
         throw new ExceptionInInitializerError("Can't find any method "
-                + getClass() + "." + name + "(" + view.getClass() + ").");
+                + presenterCls + "." + name + "(" + viewClass + ").");
+    }
+
+    private static boolean isSameOverload(Method a, Method b) {
+        return a.getDeclaringClass() == b.getDeclaringClass()
+                && Arrays.equals(a.getParameterTypes(), b.getParameterTypes());
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException,
+            ClassNotFoundException {
+        in.defaultReadObject();
+        metrics = PresentationMetrics.NONE;
+        passes = new ThreadLocal<>();
+    }
+
+    /**
+     * The resolved methods of one presenter class. They are looked up by view
+     * class through a {@link ClassValue} per {@link MethodName}, so that this
+     * table holds no view classes, which may belong to a shorter-lived loader
+     * than the presenter. Each view class only holds a weak reference to its
+     * dispatch, which this table holds strongly, so that a view class from a
+     * longer-lived loader doesn't keep the presenter's loader either. Each
+     * pair is resolved only once, and lookups are safe for concurrent readers.
+     */
+    private static final class DispatchTable {
+        private final Class<?> presenterCls;
+        private final Map<MethodName, ClassValue<Reference<Dispatch>>> byView = new EnumMap<>(
+                MethodName.class);
+
+        /**
+         * The dispatches of the resolved methods, which are shared by all view
+         * classes that resolve to the same method.
+         */
+        private final ConcurrentMap<Method, Dispatch> dispatches = new ConcurrentHashMap<>();
+
+        private DispatchTable(Class<?> presenterCls) {
+            this.presenterCls = presenterCls;
+            for (final MethodName methodName : MethodName.values()) {
+                byView.put(methodName, new ClassValue<Reference<Dispatch>>() {
+                    @Override
+                    protected Reference<Dispatch> computeValue(Class<?> viewCls) {
+                        return new WeakReference<>(resolve(methodName,
+                                viewCls));
+                    }
+                });
+            }
+        }
+
+        private Dispatch get(MethodName methodName, Class<?> viewCls) {
+            return byView.get(methodName).get(viewCls).get();
+        }
+
+        private Dispatch resolve(MethodName methodName, Class<?> viewCls) {
+            Method method = findMethod(presenterCls, methodName.toCamelCase(),
+                    viewCls);
+            if (methodName == MethodName.RENDITION_TYPE
+                    && !isSameOverload(method, findMethod(presenterCls,
+                            MethodName.RENDER.toCamelCase(), viewCls))) {
+                return Dispatch.UNKNOWN;
+            }
+            Dispatch dispatch = dispatches.get(method);
+            if (dispatch == null) {
+                dispatch = new Dispatch(method);
+                Dispatch resolved = dispatches.putIfAbsent(method, dispatch);
+                if (resolved != null) {
+                    dispatch = resolved;
+                }
+            }
+            return dispatch;
+        }
+    }
+
+    /**
+     * A resolved presenter method, together with a direct method handle to it
+     * that takes a {@link Presenter} and a {@link View} and returns an
+     * {@link Object} (<code>null</code> for <code>void</code> methods).
+     */
+    private final static class Dispatch {
+        private static final MethodType TYPE = MethodType.methodType(
+                Object.class, Presenter.class, View.class);
+
+        /**
+         * Stands for a method that is not to be called and returns
+         * <code>null</code> instead.
+         */
+        private static final Dispatch UNKNOWN = new Dispatch();
+
+        private final Method method;
+        private final MethodHandle handle;
+
+        private Dispatch() {
+            method = null;
+            handle = null;
+        }
+
+        private Dispatch(Method method) {
+            this.method = method;
+            try {
+                handle = MethodHandles.lookup().unreflect(method).asType(TYPE);
+            } catch (IllegalAccessException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+    }
+
+    /**
+     * The state of a presentation pass, which is shared by the threads that
+     * present its forked subtrees.
+     */
+    private static final class Pass {
+        private final PresentationMetrics metrics;
+        private final long start;
+
+        /**
+         * The number of nested calls taking part in this pass, on all of its
+         * threads.
+         */
+        private final AtomicInteger depth = new AtomicInteger();
+
+        private Pass(PresentationMetrics metrics) {
+            this.metrics = metrics;
+            start = metrics == PresentationMetrics.NONE ? 0 : System
+                    .nanoTime();
+        }
     }
 
     private final static class AccessibleMethod implements
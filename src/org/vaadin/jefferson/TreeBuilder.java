@@ -0,0 +1,203 @@
+/*
+ * Copyright 2011, 2012 Vaadin Ltd.
+ * 
+ * Licensed under the GNU Affero General Public License, Version 3 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at
+ * 
+ * http://www.gnu.org/licenses/agpl.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.vaadin.jefferson;
+
+import java.util.*;
+
+import com.vaadin.ui.ComponentContainer;
+
+/**
+ * Assembles a tree of views without touching any presentations, and then
+ * presents it in a single pass. This is meant for trees that are generated at
+ * runtime, for which nested {@link Composite#setChildren(View...)} calls
+ * would update presentations, and notify the presenter, once per call.
+ * 
+ * <pre>
+ * TreeBuilder.of(form)
+ *     .add(title)
+ *     .open(fields)
+ *         .add(name, email)
+ *     .close()
+ *     .add(submit)
+ *     .present(presenter);
+ * </pre>
+ * 
+ * Views are only linked to their parents when the tree is committed by
+ * {@link #present(Presenter)} or {@link #build()}. Children are appended to
+ * those that each composite already has. If the root is already presented,
+ * only the appended subtrees are presented, and their presentations are
+ * added to the root's in one update.
+ * 
+ * @param <P>
+ *            The base presentation class of the root.
+ * @author Marlon Richert @ Vaadin
+ */
+public class TreeBuilder<P extends ComponentContainer> {
+    private final Composite<P> root;
+
+    /**
+     * The children to append to each composite, in the order in which the
+     * composites were opened.
+     */
+    private final Map<Composite<?>, List<View<?>>> pending = new LinkedHashMap<>();
+    private final Set<View<?>> added = Collections
+            .newSetFromMap(new IdentityHashMap<View<?>, Boolean>());
+    private final Deque<Composite<?>> open = new ArrayDeque<>();
+    private boolean committed;
+
+    private TreeBuilder(Composite<P> root) {
+        this.root = root;
+        open.push(root);
+    }
+
+    /**
+     * Starts building a tree under the given composite, which may already
+     * have children and a presentation.
+     */
+    public static <P extends ComponentContainer> TreeBuilder<P> of(
+            Composite<P> root) {
+        if (root == null) {
+            throw new IllegalArgumentException("Root must not be null.");
+        }
+        return new TreeBuilder<>(root);
+    }
+
+    /**
+     * Adds the given views as children of the currently open composite.
+     * 
+     * @throws IllegalArgumentException
+     *             If any of the views already has a parent or has been added
+     *             before.
+     */
+    public TreeBuilder<P> add(View<?>... views) {
+        checkNotCommitted();
+        List<View<?>> children = childrenOf(open.peek());
+        for (View<?> view : views) {
+            if (view == null || view.getParent() != null || isAncestor(view)
+                    || !added.add(view)) {
+                throw new IllegalArgumentException(view
+                        + " can't be added to the tree.");
+            }
+            children.add(view);
+        }
+        return this;
+    }
+
+    /**
+     * Adds the given composite as a child of the currently open composite,
+     * and opens it, so that subsequent views are added to it until it is
+     * {@link #close() closed}.
+     */
+    public TreeBuilder<P> open(Composite<?> composite) {
+        add(composite);
+        open.push(composite);
+        return this;
+    }
+
+    /**
+     * Closes the currently open composite, so that subsequent views are added
+     * to its parent again.
+     * 
+     * @throws IllegalStateException
+     *             If only the root is open.
+     */
+    public TreeBuilder<P> close() {
+        checkNotCommitted();
+        if (open.size() == 1) {
+            throw new IllegalStateException("Only the root is open.");
+        }
+        open.pop();
+        return this;
+    }
+
+    /**
+     * Links the assembled tree without presenting it, so that it can be
+     * visited later.
+     * 
+     * @return The root.
+     * @throws IllegalStateException
+     *             If the root is already presented, since its presentation
+     *             would go out of date. Use {@link #present(Presenter)}
+     *             instead.
+     */
+    public Composite<P> build() {
+        if (root.getPresentation() != null) {
+            throw new IllegalStateException(
+                    "The root is presented; use present(Presenter) instead.");
+        }
+        commit();
+        return root;
+    }
+
+    /**
+     * Links the assembled tree and presents it with the given presenter in a
+     * single pass. If the root has no presentation yet, the whole tree is
+     * visited; otherwise, only the subtrees appended to the root are.
+     * 
+     * @return The root's presentation.
+     */
+    public P present(Presenter presenter) {
+        List<View<?>> appended = commit();
+        if (root.getPresentation() == null) {
+            return presenter.visit(root);
+        }
+        presenter.presentAppended(root, appended);
+        return root.getPresentation();
+    }
+
+    /**
+     * Appends the pending children of each composite, without updating any
+     * presentations.
+     * 
+     * @return The children appended to the root.
+     */
+    private List<View<?>> commit() {
+        checkNotCommitted();
+        committed = true;
+        for (Map.Entry<Composite<?>, List<View<?>>> entry : pending
+                .entrySet()) {
+            entry.getKey().append(entry.getValue());
+        }
+        List<View<?>> appended = pending.get(root);
+        return appended == null ? Collections.<View<?>> emptyList()
+                : appended;
+    }
+
+    private List<View<?>> childrenOf(Composite<?> composite) {
+        List<View<?>> children = pending.get(composite);
+        if (children == null) {
+            children = new ArrayList<>();
+            pending.put(composite, children);
+        }
+        return children;
+    }
+
+    private boolean isAncestor(View<?> view) {
+        for (View<?> ancestor = root; ancestor != null; ancestor = ancestor
+                .getParent()) {
+            if (ancestor == view) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void checkNotCommitted() {
+        if (committed) {
+            throw new IllegalStateException("The tree has been committed.");
+        }
+    }
+}
@@ -15,34 +15,75 @@
  */
 package org.vaadin.jefferson;
 
+import java.io.*;
+
 import com.vaadin.ui.Component;
 
 /**
  * A content node that allows itself to be presented as a Vaadin
  * {@link Component}. Convenience implementations for specific types of views
  * can be found in the {@link org.vaadin.jefferson.content} package.
+ * <p>
+ * Views are serialized in a compact, versioned form: only their name,
+ * presentation base class, presentation, presenter and parent are written.
+ * Shared and derived data, such as the view's {@link ViewTemplate}, is
+ * resolved again when the view is read.
  * 
  * @param <P>
  *            This view's base presentation class.
  * @author Marlon Richert @ Vaadin
  */
-public abstract class View<P extends Component> {
-    private String name;
-    private Class<P> presentationBase;
+public abstract class View<P extends Component> implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The version of the serialized form written by {@link View}.
+     */
+    private static final int SERIAL_FORMAT = 1;
+
+    private static final ClassValue<Class<? extends Component>> FALLBACK_TYPES = new ClassValue<Class<? extends Component>>() {
+        @Override
+        protected Class<? extends Component> computeValue(Class<?> viewCls) {
+            try {
+                FallbackType type = viewCls.getMethod("createFallback")
+                        .getAnnotation(FallbackType.class);
+                return type == null ? null : type.value();
+            } catch (NoSuchMethodException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+    };
 
-    private P presentation;
-    private Presenter presenter;
-    private Composite<?> parent;
+    private transient ViewTemplate<P> template;
+
+    private transient P presentation;
+    private transient Presenter presenter;
+    private transient Composite<?> parent;
+
+    private transient boolean changed;
+    private transient boolean changedDescendants;
+    private transient Object layoutFacts;
 
     /**
      * Creates a new view.
      * 
+     * @throws IllegalArgumentException
+     *             If the name or the presentation base is <code>null</code>.
      * @see #getName()
      * @see #getPresentationBase()
      */
     public View(String name, Class<P> presentationBase) {
-        this.name = name;
-        this.presentationBase = presentationBase;
+        this(ViewTemplate.of(name, presentationBase));
+    }
+
+    /**
+     * Creates a new view that shares the given template with other views.
+     */
+    public View(ViewTemplate<P> template) {
+        if (template == null) {
+            throw new IllegalArgumentException("Template must not be null.");
+        }
+        this.template = template;
     }
 
     /**
@@ -53,13 +94,36 @@ public abstract class View<P extends Component> {
      */
     public abstract P createFallback();
 
+    /**
+     * Gets the class of the presentation that {@link #createFallback()}
+     * returns, without creating one. Subclasses declare it by annotating their
+     * <code>createFallback()</code> method with {@link FallbackType}. Since
+     * method annotations are not inherited, overriding
+     * <code>createFallback()</code> without the annotation makes the type
+     * unknown again.
+     * 
+     * @return <code>null</code>, if not declared.
+     */
+    @SuppressWarnings("unchecked")
+    public Class<? extends P> getFallbackType() {
+        return (Class<? extends P>) FALLBACK_TYPES.get(getClass());
+    }
+
     /**
      * Gets this view's name.
      * 
      * @return A human-readable name that identifies this view.
      */
     public String getName() {
-        return name;
+        return template.getName();
+    }
+
+    /**
+     * Gets the CSS class name that presenters add to this view's presentation.
+     * It is derived from {@link #getName()} once per {@link ViewTemplate}.
+     */
+    String getStyleName() {
+        return template.getStyleName();
     }
 
     /**
@@ -68,7 +132,14 @@ public abstract class View<P extends Component> {
      * @return The return type of {@link #getPresentation()}.
      */
     public Class<P> getPresentationBase() {
-        return presentationBase;
+        return template.getPresentationBase();
+    }
+
+    /**
+     * Gets the immutable, shared part of this view.
+     */
+    public ViewTemplate<P> getTemplate() {
+        return template;
     }
 
     /**
@@ -121,6 +192,7 @@ public abstract class View<P extends Component> {
         if (presentation != null) {
             Class<? extends Component> presentationClass = presentation
                     .getClass();
+            Class<P> presentationBase = getPresentationBase();
             if (!presentationBase.isAssignableFrom(presentationClass)) {
                 throw new IllegalArgumentException(
                         presentationBase + " is not a superclass of "
@@ -134,7 +206,74 @@ public abstract class View<P extends Component> {
         return true;
     }
 
+    /**
+     * Takes over the given presentation, which belonged to another view of the
+     * same class.
+     */
+    void adopt(Component presentation) {
+        setPresentation(getPresentationBase().cast(presentation));
+    }
+
     protected P getPresentation() {
         return presentation;
     }
+
+    /**
+     * Marks this view as changed, and its ancestors as having a changed
+     * descendant.
+     * 
+     * @see Presenter#restyle(View)
+     */
+    void markChanged() {
+        changed = true;
+        for (View<?> view = parent; view != null
+                && !view.changedDescendants; view = view.parent) {
+            view.changedDescendants = true;
+        }
+    }
+
+    boolean isChanged() {
+        return changed;
+    }
+
+    boolean hasChangedDescendants() {
+        return changedDescendants;
+    }
+
+    void clean() {
+        changed = false;
+        changedDescendants = false;
+    }
+
+    Object getLayoutFacts() {
+        return layoutFacts;
+    }
+
+    void setLayoutFacts(Object layoutFacts) {
+        this.layoutFacts = layoutFacts;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.writeByte(SERIAL_FORMAT);
+        out.writeObject(template.getName());
+        out.writeObject(template.getPresentationBase());
+        out.writeObject(presentation);
+        out.writeObject(presenter);
+        out.writeObject(parent);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException,
+            ClassNotFoundException {
+        int format = in.readUnsignedByte();
+        if (format != SERIAL_FORMAT) {
+            throw new InvalidObjectException("Can't read serialized form "
+                    + format + " of " + View.class.getName());
+        }
+        template = ViewTemplate.of((String) in.readObject(),
+                (Class<P>) in.readObject());
+        presentation = (P) in.readObject();
+        presenter = (Presenter) in.readObject();
+        parent = (Composite<?>) in.readObject();
+    }
 }
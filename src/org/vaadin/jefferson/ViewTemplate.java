@@ -0,0 +1,114 @@
+/*
+ * Copyright 2011, 2012 Vaadin Ltd.
+ * 
+ * Licensed under the GNU Affero General Public License, Version 3 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at
+ * 
+ * http://www.gnu.org/licenses/agpl.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.vaadin.jefferson;
+
+import java.lang.ref.*;
+import java.util.*;
+
+import com.vaadin.ui.Component;
+
+/**
+ * The immutable part of a {@link View}: its name, the style name derived from
+ * it and its presentation base class. Templates are interned, so all views
+ * with the same name and presentation base share one template, whichever
+ * session they belong to. A view only holds a reference to its template, next
+ * to its own mutable state.
+ * 
+ * @param <P>
+ *            The base presentation class of views using this template.
+ * @author Marlon Richert @ Vaadin
+ */
+public final class ViewTemplate<P extends Component> {
+    /**
+     * Holds the interned templates of each presentation base class, by name.
+     * Both are weakly referenced, so templates that are no longer used by any
+     * view, such as those of views named after changing content, can be
+     * collected.
+     */
+    private static final ClassValue<Map<String, Reference<ViewTemplate<?>>>> TEMPLATES =
+            new ClassValue<Map<String, Reference<ViewTemplate<?>>>>() {
+        @Override
+        protected Map<String, Reference<ViewTemplate<?>>> computeValue(
+                Class<?> type) {
+            return new WeakHashMap<>();
+        }
+    };
+
+    private final String name;
+    private final String styleName;
+    private final Class<P> presentationBase;
+
+    private ViewTemplate(String name, Class<P> presentationBase) {
+        this.name = name;
+        styleName = Presenter.toStyleName(name);
+        this.presentationBase = presentationBase;
+    }
+
+    /**
+     * Gets the shared template for views with the given name and presentation
+     * base class, creating it if there is none yet.
+     * 
+     * @throws IllegalArgumentException
+     *             If the name or the presentation base is <code>null</code>.
+     */
+    @SuppressWarnings("unchecked")
+    public static <P extends Component> ViewTemplate<P> of(String name,
+            Class<P> presentationBase) {
+        if (name == null || presentationBase == null) {
+            throw new IllegalArgumentException(
+                    "Name and presentation base must not be null.");
+        }
+        Map<String, Reference<ViewTemplate<?>>> templates = TEMPLATES
+                .get(presentationBase);
+        synchronized (templates) {
+            Reference<ViewTemplate<?>> reference = templates.get(name);
+            ViewTemplate<?> template = reference == null ? null : reference
+                    .get();
+            if (template == null) {
+                template = new ViewTemplate<>(name, presentationBase);
+                // Key the entry by the template's own name, which lives as
+                // long as the template does.
+                templates.remove(name);
+                templates.put(template.name, new WeakReference<ViewTemplate<?>>(
+                        template));
+            }
+            return (ViewTemplate<P>) template;
+        }
+    }
+
+    /**
+     * @see View#getName()
+     */
+    public String getName() {
+        return name;
+    }
+
+    String getStyleName() {
+        return styleName;
+    }
+
+    /**
+     * @see View#getPresentationBase()
+     */
+    public Class<P> getPresentationBase() {
+        return presentationBase;
+    }
+
+    @Override
+    public String toString() {
+        return presentationBase.getSimpleName() + " " + name;
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright 2011, 2012 Vaadin Ltd.
+ * 
+ * Licensed under the GNU Affero General Public License, Version 3 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at
+ * 
+ * http://www.gnu.org/licenses/agpl.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.vaadin.jefferson;
+
+import java.io.*;
+import java.util.*;
+
+import com.vaadin.data.Container;
+import com.vaadin.ui.*;
+
+/**
+ * A view of one row per item in a {@link Container}, which only materializes
+ * rows for the items that its presentation actually renders. It is presented
+ * as a {@link Viewport}, a table with a single generated column, so only the
+ * items in the visible window and the table's cache buffer get a row.
+ * <p>
+ * Rows are views created and bound to items by a {@link RowBinder}. When an
+ * item scrolls out of the rendered range, its row keeps its presentation and
+ * is bound to the next item that needs one, so memory and render time depend
+ * on the size of the viewport, not on the number of items. Recycled rows are
+ * not presented again; binders update them through the row views' own state.
+ * <p>
+ * Since items are passed to the binder by their item ids, the model should be
+ * a container whose item ids are the items themselves, such as a
+ * {@link com.vaadin.data.util.BeanItemContainer} or a
+ * {@link org.vaadin.jefferson.content.PagedContainer}.
+ * <p>
+ * A virtual composite is not a {@link Composite}: its rows are not its
+ * children, so they are not visited along with it, and composite operations
+ * such as {@link Composite#replaceChild(View, View)}, {@link TreeBuilder} or
+ * restyling after children change don't apply to it. Row views must let the
+ * binder change what they show after they have been presented. The content
+ * views in {@link org.vaadin.jefferson.content}, such as
+ * {@link org.vaadin.jefferson.content.StaticText} and
+ * {@link org.vaadin.jefferson.content.ButtonControl}, show their name, which
+ * is fixed, so they can't be rebound to another item.
+ * 
+ * @param <T>
+ *            The type of items.
+ * @param <V>
+ *            The type of row views.
+ * @author Marlon Richert @ Vaadin
+ */
+public class VirtualComposite<T, V extends View<?>> extends
+        View<VirtualComposite.Viewport> {
+
+    /**
+     * Creates row views and binds them to items.
+     */
+    public interface RowBinder<T, V extends View<?>> extends Serializable {
+
+        /**
+         * Creates a new, unbound row view.
+         */
+        V createRow();
+
+        /**
+         * Binds the given row to the given item. The row may have been bound
+         * to another item before, in which case it already has a
+         * presentation.
+         */
+        void bind(V row, T item);
+    }
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Object ROW_COLUMN = "row";
+
+    private final RowBinder<T, V> binder;
+    private Container model;
+
+    /**
+     * The bound rows by item id, and the item id of each bound row's
+     * presentation, so that rows can be recycled when their presentations are
+     * no longer rendered.
+     */
+    private final Map<Object, V> rows = new HashMap<>();
+    private final Map<Component, Object> itemIds = new IdentityHashMap<>();
+
+    /**
+     * Unbound rows that still have their presentations, most recently
+     * recycled first.
+     */
+    private final Deque<V> free = new ArrayDeque<>();
+
+    private final Table.ColumnGenerator generator = new Table.ColumnGenerator() {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public Object generateCell(Table source, Object itemId,
+                Object columnId) {
+            return materialize(itemId);
+        }
+    };
+
+    public VirtualComposite(String name, RowBinder<T, V> binder) {
+        super(name, Viewport.class);
+        this.binder = binder;
+    }
+
+    public void setModel(Container model) {
+        releaseRows();
+        Viewport presentation = getPresentation();
+        if (presentation != null) {
+            presentation.setContainerDataSource(model);
+            presentation.setVisibleColumns(new Object[] { ROW_COLUMN });
+        }
+        this.model = model;
+    }
+
+    public Container getModel() {
+        return model;
+    }
+
+    /**
+     * Gets the row bound to the given item.
+     * 
+     * @return <code>null</code>, if the item has no row.
+     */
+    public V getRow(T item) {
+        return rows.get(item);
+    }
+
+    /**
+     * Gets the number of rows that are bound to items.
+     */
+    public int getRowCount() {
+        return rows.size();
+    }
+
+    /**
+     * Gets the number of rows that are waiting to be bound to an item again.
+     */
+    public int getFreeRowCount() {
+        return free.size();
+    }
+
+    @Override
+    @FallbackType(Viewport.class)
+    public Viewport createFallback() {
+        return new Viewport();
+    }
+
+    @Override
+    protected Viewport accept(Presenter presenter) {
+        Viewport presentation = super.accept(presenter);
+        presentation.setColumnHeaderMode(Table.COLUMN_HEADER_MODE_HIDDEN);
+        presentation.removeGeneratedColumn(ROW_COLUMN);
+        presentation.addGeneratedColumn(ROW_COLUMN, generator);
+        setModel(model);
+        return presentation;
+    }
+
+    /**
+     * Sets this view's presentation. Rows are bound to the rendered cells of a
+     * presentation, so they are all released when it changes.
+     */
+    @Override
+    protected boolean setPresentation(Viewport presentation) {
+        Viewport oldPresentation = getPresentation();
+        if (oldPresentation == presentation) {
+            return false;
+        }
+        releaseRows();
+        if (oldPresentation != null) {
+            oldPresentation.owner = null;
+            oldPresentation.removeGeneratedColumn(ROW_COLUMN);
+        }
+        if (presentation != null) {
+            presentation.owner = this;
+        }
+        return super.setPresentation(presentation);
+    }
+
+    /**
+     * Gets the presentation of the given item's row, binding a free or new row
+     * to the item if it has none.
+     */
+    @SuppressWarnings("unchecked")
+    private Component materialize(Object itemId) {
+        V row = rows.get(itemId);
+        if (row == null) {
+            row = free.poll();
+            if (row == null) {
+                row = binder.createRow();
+            }
+            binder.bind(row, (T) itemId);
+            rows.put(itemId, row);
+        }
+        Component presentation = row.getPresentation();
+        if (presentation == null) {
+            presentation = present((View<?>) row);
+        }
+        itemIds.put(presentation, itemId);
+        return presentation;
+    }
+
+    private <P extends Component> P present(View<P> row) {
+        Presenter presenter = getPresenter();
+        if (presenter != null) {
+            return presenter.visit(row);
+        }
+        row.setPresentation(row.createFallback());
+        return row.getPresentation();
+    }
+
+    /**
+     * Unbinds the row of the given presentation, which is no longer rendered,
+     * and keeps it for the next item that needs a row.
+     */
+    private void recycle(Component presentation) {
+        Object itemId = itemIds.remove(presentation);
+        if (itemId != null) {
+            free.push(rows.remove(itemId));
+        }
+    }
+
+    private void releaseRows() {
+        for (V row : rows.values()) {
+            row.setPresentation(null);
+        }
+        for (V row : free) {
+            row.setPresentation(null);
+        }
+        rows.clear();
+        itemIds.clear();
+        free.clear();
+    }
+
+    /**
+     * The presentation of a {@link VirtualComposite}: a table that tells its
+     * view which rows it no longer renders.
+     */
+    public static class Viewport extends Table {
+        private static final long serialVersionUID = 1L;
+
+        private VirtualComposite<?, ?> owner;
+
+        @Override
+        protected void unregisterComponent(Component component) {
+            super.unregisterComponent(component);
+            if (owner != null) {
+                owner.recycle(component);
+            }
+        }
+    }
+}
@@ -16,18 +16,31 @@
 package org.vaadin.jefferson.content;
 
 import org.vaadin.jefferson.Control;
+import org.vaadin.jefferson.FallbackType;
 
 import com.vaadin.ui.Button;
 import com.vaadin.ui.Button.ClickListener;
 import com.vaadin.ui.NativeButton;
 
 public class ButtonControl extends Control<Button, ClickListener> {
+    private static final long serialVersionUID = 1L;
     public ButtonControl(String name) {
         super(name, Button.class, ClickListener.class);
     }
 
     @Override
+    @FallbackType(NativeButton.class)
     public Button createFallback() {
         return new NativeButton(getName());
     }
+
+    @Override
+    protected void attachListener(Button presentation, ClickListener listener) {
+        presentation.addListener(listener);
+    }
+
+    @Override
+    protected void detachListener(Button presentation, ClickListener listener) {
+        presentation.removeListener(listener);
+    }
 }
@@ -0,0 +1,392 @@
+/*
+ * Copyright 2011, 2012 Vaadin Ltd.
+ * 
+ * Licensed under the GNU Affero General Public License, Version 3 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at
+ * 
+ * http://www.gnu.org/licenses/agpl.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.vaadin.jefferson.content;
+
+import java.beans.*;
+import java.io.*;
+import java.lang.reflect.Method;
+import java.util.*;
+
+import com.vaadin.data.*;
+import com.vaadin.data.util.*;
+
+/**
+ * A read-only container of beans that are fetched from a {@link Source} one
+ * page at a time, when they are first needed. Only a bounded number of pages
+ * is kept in memory; the least recently used page is evicted first. Item ids
+ * are the beans themselves, as in a {@link BeanItemContainer}.
+ * <p>
+ * This container is meant for presentations that only ask for the items they
+ * show, such as {@link com.vaadin.ui.Table}. Presentations that iterate over
+ * all of their items, such as {@link com.vaadin.ui.NativeSelect}, will still
+ * fetch every page.
+ * 
+ * @param <T>
+ *            The type of beans in this container.
+ * @author Marlon Richert @ Vaadin
+ */
+public class PagedContainer<T> implements Container.Indexed,
+        Container.ItemSetChangeNotifier {
+
+    /**
+     * A backend from which a {@link PagedContainer} fetches its beans.
+     */
+    public interface Source<T> extends Serializable {
+
+        /**
+         * @return The total number of beans.
+         */
+        int size();
+
+        /**
+         * Fetches a range of beans.
+         * 
+         * @param offset
+         *            The index of the first bean to fetch.
+         * @param limit
+         *            The maximum number of beans to fetch.
+         * @return The beans at the given range of indexes, in order.
+         */
+        List<T> fetch(int offset, int limit);
+
+        /**
+         * @return The index of the given bean, or -1 if there is none.
+         */
+        int indexOf(T bean);
+    }
+
+    private static final long serialVersionUID = 1L;
+
+    private final Class<T> beanType;
+    private final Source<T> source;
+    private final int pageSize;
+    private final int maxPages;
+    private final List<ItemSetChangeListener> listeners = new LinkedList<>();
+
+    /*
+     * Derived from the above, and so not serialized.
+     */
+    private transient Map<String, PropertyDescriptor> properties;
+    private transient Map<Integer, Page> pages;
+    private transient Map<Object, Integer> indexes;
+    private transient int size;
+
+    /**
+     * Creates a new container.
+     * 
+     * @param pageSize
+     *            The number of beans to fetch at a time.
+     * @param maxPages
+     *            The maximum number of pages to keep in memory.
+     */
+    public PagedContainer(Class<T> beanType, Source<T> source, int pageSize,
+            int maxPages) {
+        if (pageSize < 1 || maxPages < 1) {
+            throw new IllegalArgumentException(
+                    "Page size and number of pages must be positive.");
+        }
+        this.beanType = beanType;
+        this.source = source;
+        this.pageSize = pageSize;
+        this.maxPages = maxPages;
+        init();
+    }
+
+    private void init() {
+        size = -1;
+        pages = new LinkedHashMap<Integer, Page>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Page> eldest) {
+                if (size() <= maxPages) {
+                    return false;
+                }
+                unindex(eldest.getKey(), eldest.getValue());
+                return true;
+            }
+        };
+        indexes = new IdentityHashMap<>();
+        properties = new LinkedHashMap<>();
+        try {
+            for (PropertyDescriptor property : Introspector.getBeanInfo(
+                    beanType).getPropertyDescriptors()) {
+                if (property.getReadMethod() != null
+                        && !"class".equals(property.getName())) {
+                    properties.put(property.getName(), property);
+                }
+            }
+        } catch (IntrospectionException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException,
+            ClassNotFoundException {
+        in.defaultReadObject();
+        init();
+    }
+
+    public Class<T> getBeanType() {
+        return beanType;
+    }
+
+    /**
+     * Discards all cached beans and the cached size, and notifies listeners
+     * that the items in this container have changed.
+     */
+    public void refresh() {
+        pages.clear();
+        indexes.clear();
+        size = -1;
+        for (ItemSetChangeListener listener : new ArrayList<>(listeners)) {
+            listener.containerItemSetChange(new ItemSetChangeEvent() {
+                @Override
+                public Container getContainer() {
+                    return PagedContainer.this;
+                }
+            });
+        }
+    }
+
+    @Override
+    public int size() {
+        if (size < 0) {
+            size = source.size();
+        }
+        return size;
+    }
+
+    @Override
+    public T getIdByIndex(int index) {
+        if (index < 0 || index >= size()) {
+            return null;
+        }
+        Page page = getPage(index / pageSize);
+        int offset = index % pageSize;
+        return offset < page.beans.size() ? page.beans.get(offset) : null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public int indexOfId(Object itemId) {
+        if (!beanType.isInstance(itemId)) {
+            return -1;
+        }
+        Integer index = indexes.get(itemId);
+        return index != null ? index : source.indexOf((T) itemId);
+    }
+
+    @Override
+    public Item getItem(Object itemId) {
+        int index = indexOfId(itemId);
+        if (index < 0) {
+            return null;
+        }
+        return getPage(index / pageSize).getItem(index % pageSize);
+    }
+
+    @Override
+    public Collection<?> getContainerPropertyIds() {
+        return Collections.unmodifiableSet(properties.keySet());
+    }
+
+    /**
+     * Returns a read-only view of this container's item ids, which fetches
+     * beans as they are accessed.
+     */
+    @Override
+    public List<T> getItemIds() {
+        return new AbstractList<T>() {
+            @Override
+            public T get(int index) {
+                return getIdByIndex(index);
+            }
+
+            @Override
+            public int size() {
+                return PagedContainer.this.size();
+            }
+        };
+    }
+
+    @Override
+    public Property getContainerProperty(Object itemId, Object propertyId) {
+        Item item = getItem(itemId);
+        return item == null ? null : item.getItemProperty(propertyId);
+    }
+
+    @Override
+    public Class<?> getType(Object propertyId) {
+        PropertyDescriptor property = properties.get(propertyId);
+        return property == null ? null : property.getPropertyType();
+    }
+
+    @Override
+    public boolean containsId(Object itemId) {
+        return indexOfId(itemId) >= 0;
+    }
+
+    @Override
+    public T nextItemId(Object itemId) {
+        int index = indexOfId(itemId);
+        return index < 0 ? null : getIdByIndex(index + 1);
+    }
+
+    @Override
+    public T prevItemId(Object itemId) {
+        int index = indexOfId(itemId);
+        return index < 1 ? null : getIdByIndex(index - 1);
+    }
+
+    @Override
+    public T firstItemId() {
+        return getIdByIndex(0);
+    }
+
+    @Override
+    public T lastItemId() {
+        return getIdByIndex(size() - 1);
+    }
+
+    @Override
+    public boolean isFirstId(Object itemId) {
+        return itemId != null && itemId.equals(firstItemId());
+    }
+
+    @Override
+    public boolean isLastId(Object itemId) {
+        return itemId != null && itemId.equals(lastItemId());
+    }
+
+    @Override
+    public void addListener(ItemSetChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void removeListener(ItemSetChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public Item addItem(Object itemId) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Object addItem() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean removeItem(Object itemId) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean addContainerProperty(Object propertyId, Class<?> type,
+            Object defaultValue) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean removeContainerProperty(Object propertyId) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean removeAllItems() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Object addItemAfter(Object previousItemId) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Item addItemAfter(Object previousItemId, Object newItemId) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Object addItemAt(int index) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Item addItemAt(int index, Object newItemId) {
+        throw new UnsupportedOperationException();
+    }
+
+    private Page getPage(int number) {
+        Page page = pages.get(number);
+        if (page == null) {
+            page = new Page(source.fetch(number * pageSize, pageSize));
+            pages.put(number, page);
+            for (int i = 0; i < page.beans.size(); i++) {
+                indexes.put(page.beans.get(i), number * pageSize + i);
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Forgets the indexes of the beans in the given evicted page.
+     */
+    private void unindex(int number, Page page) {
+        for (int i = 0; i < page.beans.size(); i++) {
+            Integer index = indexes.get(page.beans.get(i));
+            if (index != null && index == number * pageSize + i) {
+                indexes.remove(page.beans.get(i));
+            }
+        }
+    }
+
+    /**
+     * A range of fetched beans, together with the items wrapping them, which
+     * are created when first asked for.
+     */
+    private class Page {
+        private final List<T> beans;
+        private final Item[] items;
+
+        private Page(List<T> beans) {
+            this.beans = beans;
+            items = new Item[beans.size()];
+        }
+
+        private Item getItem(int offset) {
+            if (offset >= items.length) {
+                return null;
+            }
+            if (items[offset] == null) {
+                PropertysetItem item = new PropertysetItem();
+                for (PropertyDescriptor property : properties.values()) {
+                    Method setter = property.getWriteMethod();
+                    item.addItemProperty(property.getName(),
+                            new MethodProperty<Object>(
+                                    property.getPropertyType(),
+                                    beans.get(offset),
+                                    property.getReadMethod(), setter));
+                }
+                items[offset] = item;
+            }
+            return items[offset];
+        }
+    }
+}
@@ -15,26 +15,65 @@
  */
 package org.vaadin.jefferson.content;
 
+import java.io.Serializable;
 import java.lang.reflect.Array;
 import java.util.*;
 
 import org.vaadin.jefferson.*;
 
+import com.vaadin.data.Container;
+import com.vaadin.data.Property.ValueChangeEvent;
 import com.vaadin.data.Property.ValueChangeListener;
 import com.vaadin.data.util.BeanItemContainer;
 import com.vaadin.ui.*;
 
+/**
+ * A control for choosing one or more beans out of a model.
+ * <p>
+ * The current selection can be read without copying it, through
+ * {@link #getSelectedItem()}, {@link #getSelectedItems()} and
+ * {@link #isSelected(Object)}. To find out which beans were selected or
+ * deselected by a change, register a {@link SelectionListener}.
+ * 
+ * @param <T>
+ *            The type of beans to choose from.
+ */
 public class SelectionControl<T>
         extends Control<AbstractSelect, ValueChangeListener> {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Gets notified of the beans that a change added to or removed from the
+     * selection of a {@link SelectionControl}.
+     */
+    public interface SelectionListener<T> extends Serializable {
+        /**
+         * @param added
+         *            The newly selected beans.
+         * @param removed
+         *            The beans that are no longer selected.
+         */
+        void selectionChange(SelectionControl<T> source, Collection<T> added,
+                Collection<T> removed);
+    }
+
+    private final Tracker tracker = new Tracker();
+    private final Collection<T> selectedItems = new SelectedItems();
+    private final List<SelectionListener<T>> selectionListeners = new LinkedList<>();
+
     private Class<T> beanType;
-    private BeanItemContainer<T> model;
-    private T[] selection;
+    private Container model;
+
+    /**
+     * The selection, in the form of the presentation's value: either
+     * <code>null</code>, a single bean or a collection of beans.
+     */
+    private Object selection;
 
     public SelectionControl(String name, Class<T> beanType) {
         super(name, AbstractSelect.class, ValueChangeListener.class);
         this.beanType = beanType;
         model = new BeanItemContainer<>(beanType);
-        selection = (T[]) Array.newInstance(beanType, 0);
     }
 
     @SafeVarargs
@@ -42,7 +81,39 @@ public class SelectionControl<T>
         setModel(new BeanItemContainer<>(beanType, Arrays.asList(choices)));
     }
 
+    /**
+     * Sets the choices to beans that are fetched from the given source a page
+     * at a time, as they are shown.
+     * 
+     * @see PagedContainer
+     */
+    public void setChoices(PagedContainer.Source<T> source, int pageSize,
+            int maxPages) {
+        setContainer(new PagedContainer<>(beanType, source, pageSize,
+                maxPages));
+    }
+
     public void setModel(BeanItemContainer<T> model) {
+        setContainer(model);
+    }
+
+    /**
+     * Gets the current model, if it is a {@link BeanItemContainer}.
+     * 
+     * @return <code>null</code>, if the model is another kind of container.
+     * @see #getContainer()
+     */
+    @SuppressWarnings("unchecked")
+    public BeanItemContainer<T> getModel() {
+        return model instanceof BeanItemContainer<?> ? (BeanItemContainer<T>) model
+                : null;
+    }
+
+    /**
+     * Sets the model to any container whose item ids are the beans to choose
+     * from, such as a {@link PagedContainer}.
+     */
+    public void setContainer(Container model) {
         AbstractSelect presentation = getPresentation();
         if (presentation != null) {
             presentation.setContainerDataSource(model);
@@ -50,58 +121,274 @@ public class SelectionControl<T>
         this.model = model;
     }
 
-    public BeanItemContainer<T> getModel() {
+    public Container getContainer() {
         return model;
     }
 
+    /**
+     * Adds the given beans to the current model, without replacing it. The
+     * selection is kept as it is.
+     * 
+     * @throws UnsupportedOperationException
+     *             If the model does not support adding items.
+     */
+    @SuppressWarnings("unchecked")
+    public void addChoices(Collection<? extends T> choices) {
+        if (model instanceof BeanItemContainer<?>) {
+            ((BeanItemContainer<T>) model).addAll(choices);
+        } else {
+            for (T choice : choices) {
+                model.addItem(choice);
+            }
+        }
+    }
+
+    /**
+     * Removes the given beans from the current model, without replacing it.
+     * Removed beans are also removed from the selection.
+     * 
+     * @throws UnsupportedOperationException
+     *             If the model does not support removing items.
+     */
+    public void removeChoices(Collection<? extends T> choices) {
+        AbstractSelect presentation = getPresentation();
+        for (T choice : choices) {
+            if (presentation != null && presentation.isSelected(choice)) {
+                presentation.unselect(choice);
+            }
+            model.removeItem(choice);
+        }
+        if (presentation == null && !selectedItems.isEmpty()) {
+            Collection<T> remaining = new ArrayList<>(selectedItems);
+            remaining.removeAll(choices);
+            setSelection(remaining);
+        }
+    }
+
+    /**
+     * Shows the current state of the given bean, after it has been changed in
+     * place. Unlike replacing the model, this does not resend the list of
+     * choices.
+     */
+    public void updateChoice(T choice) {
+        AbstractSelect presentation = getPresentation();
+        if (presentation instanceof Table) {
+            ((Table) presentation).refreshRowCache();
+        } else if (presentation != null && presentation.containsId(choice)) {
+            presentation.requestRepaint();
+        }
+    }
+
     @SafeVarargs
     public final void setSelection(T... selection) {
+        switch (selection.length) {
+        case 0:
+            setSelectionValue(null);
+            break;
+        case 1:
+            setSelectionValue(selection[0]);
+            break;
+        default:
+            setSelectionValue(Arrays.asList(selection));
+        }
+    }
+
+    /**
+     * Selects the given beans. A collection of several beans is handed to the
+     * presentation as is, so it should not be modified afterwards.
+     */
+    public void setSelection(Collection<? extends T> selection) {
+        switch (selection.size()) {
+        case 0:
+            setSelectionValue(null);
+            break;
+        case 1:
+            setSelectionValue(selection.iterator().next());
+            break;
+        default:
+            setSelectionValue(selection);
+        }
+    }
+
+    /**
+     * Sets the selection, given as either <code>null</code>, a single bean or
+     * a collection of several beans. Multi-select presentations only take
+     * collections, so a single bean is wrapped for them.
+     */
+    private void setSelectionValue(Object selection) {
         AbstractSelect presentation = getPresentation();
-        if (presentation != null) {
-            switch (selection.length) {
-            case 0:
-                presentation.setValue(null);
-                break;
-            case 1:
-                presentation.setValue(selection[0]);
-                break;
-            default:
-                presentation.setValue(Arrays.asList(selection));
+        if (presentation == null) {
+            this.selection = selection;
+        } else {
+            if (presentation.isMultiSelect() && selection != null
+                    && !(selection instanceof Collection<?>)) {
+                selection = Collections.singleton(selection);
             }
+            presentation.setValue(selection);
+            this.selection = presentation.getValue();
         }
-        this.selection = selection;
     }
 
+    /**
+     * Returns a copy of the selection. Prefer {@link #getSelectedItem()} or
+     * {@link #getSelectedItems()}, which don't copy anything.
+     */
     @SuppressWarnings("unchecked")
     public T[] getSelection() {
-        AbstractSelect presentation = getPresentation();
-        if (presentation != null) {
-            Object value = presentation.getValue();
-            if (value instanceof Collection<?>) {
-                Collection<T> collection = (Collection<T>) value;
-                selection = collection.toArray(
-                        (T[]) Array.newInstance(beanType, collection.size()));
-            } else {
-                selection = (T[]) Array.newInstance(beanType, 1);
-                selection[0] = (T) value;
-            }
+        return selectedItems.toArray((T[]) Array.newInstance(beanType,
+                selectedItems.size()));
+    }
+
+    /**
+     * Gets the selected bean, or the first one if several are selected.
+     * 
+     * @return The selected bean, or <code>null</code> if there is none.
+     */
+    @SuppressWarnings("unchecked")
+    public T getSelectedItem() {
+        if (selection instanceof Collection<?>) {
+            Iterator<T> iterator = ((Collection<T>) selection).iterator();
+            return iterator.hasNext() ? iterator.next() : null;
         }
-        return selection;
+        return (T) selection;
+    }
+
+    /**
+     * Returns a read-only view of the selected beans, which always reflects
+     * the current selection.
+     */
+    public Collection<T> getSelectedItems() {
+        return selectedItems;
+    }
+
+    public boolean isSelected(T item) {
+        return item != null && selectedItems.contains(item);
+    }
+
+    public void addSelectionListener(SelectionListener<T> listener) {
+        selectionListeners.add(listener);
+    }
+
+    public void removeSelectionListener(SelectionListener<T> listener) {
+        selectionListeners.remove(listener);
     }
 
     @Override
+    @FallbackType(NativeSelect.class)
     public AbstractSelect createFallback() {
         return new NativeSelect(getName());
     }
 
+    @Override
+    protected void attachListener(AbstractSelect presentation,
+            ValueChangeListener listener) {
+        presentation.addListener(listener);
+    }
+
+    @Override
+    protected void detachListener(AbstractSelect presentation,
+            ValueChangeListener listener) {
+        presentation.removeListener(listener);
+    }
+
     @Override
     protected AbstractSelect accept(Presenter p) {
         AbstractSelect presentation = super.accept(p);
         if (presentation instanceof Table) {
             ((Table) presentation).setSelectable(true);
         }
-        setModel(model);
-        setSelection(selection);
+        presentation.removeListener(tracker);
+        setContainer(model);
+        setSelectionValue(selection);
+        presentation.addListener(tracker);
         return presentation;
     }
+
+    @Override
+    protected boolean setPresentation(AbstractSelect presentation) {
+        AbstractSelect old = getPresentation();
+        if (old != null && old != presentation) {
+            old.removeListener(tracker);
+        }
+        return super.setPresentation(presentation);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Collection<T> asCollection(Object value) {
+        if (value instanceof Collection<?>) {
+            return (Collection<T>) value;
+        }
+        return value == null ? Collections.<T> emptySet() : Collections
+                .singleton((T) value);
+    }
+
+    /**
+     * Keeps the selection up to date with the presentation's value, and tells
+     * selection listeners what changed.
+     */
+    private class Tracker implements ValueChangeListener {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public void valueChange(ValueChangeEvent event) {
+            Object previous = selection;
+            selection = event.getProperty().getValue();
+            if (selectionListeners.isEmpty()) {
+                return;
+            }
+            Collection<T> before = asCollection(previous);
+            Collection<T> after = asCollection(selection);
+            Collection<T> added = difference(after, before);
+            Collection<T> removed = difference(before, after);
+            if (added.isEmpty() && removed.isEmpty()) {
+                return;
+            }
+            for (SelectionListener<T> listener : new ArrayList<>(
+                    selectionListeners)) {
+                listener.selectionChange(SelectionControl.this, added,
+                        removed);
+            }
+        }
+
+        private Collection<T> difference(Collection<T> a, Collection<T> b) {
+            Collection<T> difference = null;
+            for (T item : a) {
+                if (!b.contains(item)) {
+                    if (difference == null) {
+                        difference = new ArrayList<>();
+                    }
+                    difference.add(item);
+                }
+            }
+            return difference == null ? Collections.<T> emptyList()
+                    : Collections.unmodifiableCollection(difference);
+        }
+    }
+
+    /**
+     * A read-only view of the current selection.
+     */
+    private class SelectedItems extends AbstractCollection<T> implements
+            Serializable {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public Iterator<T> iterator() {
+            return Collections.unmodifiableCollection(
+                    SelectionControl.<T> asCollection(selection)).iterator();
+        }
+
+        @Override
+        public int size() {
+            if (selection instanceof Collection<?>) {
+                return ((Collection<?>) selection).size();
+            }
+            return selection == null ? 0 : 1;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return asCollection(selection).contains(o);
+        }
+    }
 }
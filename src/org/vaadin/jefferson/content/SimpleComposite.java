@@ -16,12 +16,14 @@
 package org.vaadin.jefferson.content;
 
 import org.vaadin.jefferson.Composite;
+import org.vaadin.jefferson.FallbackType;
 import org.vaadin.jefferson.View;
 
 import com.vaadin.ui.ComponentContainer;
 import com.vaadin.ui.CssLayout;
 
 public class SimpleComposite extends Composite<ComponentContainer> {
+    private static final long serialVersionUID = 1L;
 
     public SimpleComposite(String name) {
         super(name, ComponentContainer.class);
@@ -32,6 +34,7 @@ public class SimpleComposite extends Composite<ComponentContainer> {
     }
 
     @Override
+    @FallbackType(CssLayout.class)
     public ComponentContainer createFallback() {
         return new CssLayout();
     }
@@ -1,16 +1,19 @@
 package org.vaadin.jefferson.content;
 
+import org.vaadin.jefferson.FallbackType;
 import org.vaadin.jefferson.View;
 
 import com.vaadin.ui.Label;
 
 public class StaticText extends View<Label> {
+    private static final long serialVersionUID = 1L;
 
     public StaticText(String name) {
         super(name, Label.class);
     }
 
     @Override
+    @FallbackType(Label.class)
     public Label createFallback() {
         return new Label(getName());
     }
@@ -16,29 +16,242 @@
 package org.vaadin.jefferson.content;
 
 import org.vaadin.jefferson.Control;
+import org.vaadin.jefferson.FallbackType;
+import org.vaadin.jefferson.Presenter;
 
+import com.vaadin.data.Property.ValueChangeEvent;
+import com.vaadin.data.Property.ValueChangeListener;
+import com.vaadin.event.FieldEvents.TextChangeEvent;
 import com.vaadin.event.FieldEvents.TextChangeListener;
 import com.vaadin.ui.*;
+import com.vaadin.ui.AbstractTextField.TextChangeEventMode;
 
+/**
+ * A control for entering text, which notifies its controller of text changes.
+ * <p>
+ * By default, every text change event that reaches the server is passed on to
+ * the controller. To reduce the number of server round-trips, set a lazy or
+ * timeout event mode with
+ * {@link #setTextChangeEventMode(TextChangeEventMode, int)}, turn off
+ * {@link #setImmediate(boolean) immediacy}, and/or
+ * {@link #setCoalescingInterval(int) coalesce} events, so that the controller
+ * is notified at most once per interval. {@link #getText()} always returns the
+ * most recent text seen by the server.
+ */
 public class TextControl extends Control<AbstractTextField, TextChangeListener> {
+    private static final long serialVersionUID = 1L;
+
+    private final Relay relay = new Relay();
+
+    private TextChangeEventMode textChangeEventMode;
+    private int textChangeTimeout;
+    private int coalescingInterval;
+
+    private transient String text;
+    private String deliveredText;
+    private long receivedTextChanges;
+    private long deliveredTextChanges;
+    private long coalescedTextChanges;
 
     public TextControl(String name) {
         super(name, AbstractTextField.class, TextChangeListener.class);
     }
 
+    /**
+     * Sets when this control's presentation sends text change events to the
+     * server.
+     * 
+     * @param mode
+     *            The event mode, or <code>null</code> to keep the
+     *            presentation's own default.
+     * @param timeout
+     *            The timeout in milliseconds for the lazy and timeout modes.
+     * @see AbstractTextField#setTextChangeEventMode(TextChangeEventMode)
+     * @see AbstractTextField#setTextChangeTimeout(int)
+     */
+    public void setTextChangeEventMode(TextChangeEventMode mode, int timeout) {
+        textChangeEventMode = mode;
+        textChangeTimeout = timeout;
+        applyTextChangeEventMode(getPresentation());
+    }
+
+    public TextChangeEventMode getTextChangeEventMode() {
+        return textChangeEventMode;
+    }
+
+    public int getTextChangeTimeout() {
+        return textChangeTimeout;
+    }
+
+    /**
+     * Sets the minimum time between two text change events passed on to the
+     * controller. An event that arrives sooner is kept pending instead, and
+     * replaced by any later one, so that the controller only sees the latest
+     * text. The pending event is passed on with the first event after the
+     * interval, or when the value of the presentation is committed. Events
+     * that leave the text as it was when the controller was last notified are
+     * dropped.
+     * 
+     * @param milliseconds
+     *            The interval, or 0 to pass every event on as it arrives.
+     */
+    public void setCoalescingInterval(int milliseconds) {
+        if (milliseconds < 0) {
+            throw new IllegalArgumentException(
+                    "Interval must not be negative.");
+        }
+        coalescingInterval = milliseconds;
+        if (milliseconds == 0) {
+            relay.flush();
+        }
+    }
+
+    public int getCoalescingInterval() {
+        return coalescingInterval;
+    }
+
+    /**
+     * Gets the number of text change events that this control has received
+     * from its presentation.
+     */
+    public long getReceivedTextChanges() {
+        return receivedTextChanges;
+    }
+
+    /**
+     * Gets the number of text change events that this control has passed on
+     * to its controller.
+     */
+    public long getDeliveredTextChanges() {
+        return deliveredTextChanges;
+    }
+
+    /**
+     * Gets the number of text change events that this control has received,
+     * but not passed on to its controller because they were coalesced. Events
+     * that the client did not send at all, because of the
+     * {@link #setTextChangeEventMode(TextChangeEventMode, int) event mode},
+     * can't be counted on the server, and neither are events that arrived
+     * while the control had no controller.
+     */
+    public long getSuppressedTextChanges() {
+        return coalescedTextChanges;
+    }
+
+    @Override
+    protected AbstractTextField accept(Presenter presenter) {
+        AbstractTextField presentation = super.accept(presenter);
+        applyTextChangeEventMode(presentation);
+        return presentation;
+    }
+
+    @Override
+    protected boolean setPresentation(AbstractTextField presentation) {
+        text = null;
+        return super.setPresentation(presentation);
+    }
+
+    private void applyTextChangeEventMode(AbstractTextField presentation) {
+        if (presentation != null && textChangeEventMode != null) {
+            presentation.setTextChangeEventMode(textChangeEventMode);
+            presentation.setTextChangeTimeout(textChangeTimeout);
+        }
+    }
+
     @Override
+    @FallbackType(TextField.class)
     public AbstractTextField createFallback() {
         TextField presentation = new TextField();
         presentation.setInputPrompt(getName());
         return presentation;
     }
 
+    /**
+     * Registers a relay to the given presentation, which passes text changes
+     * on to this control's current controller.
+     */
+    @Override
+    protected void attachListener(AbstractTextField presentation,
+            TextChangeListener listener) {
+        presentation.addListener((TextChangeListener) relay);
+        presentation.addListener((ValueChangeListener) relay);
+    }
+
+    @Override
+    protected void detachListener(AbstractTextField presentation,
+            TextChangeListener listener) {
+        presentation.removeListener((TextChangeListener) relay);
+        presentation.removeListener((ValueChangeListener) relay);
+        relay.pending = null;
+        text = null;
+    }
+
     public String getText() {
         AbstractTextField presentation = getPresentation();
         if (presentation == null) {
             return "";
         }
+        if (text != null) {
+            return text;
+        }
         Object value = presentation.getValue();
         return value == null ? "" : "" + value;
     }
+
+    /**
+     * Keeps track of the most recent text and passes text change events on to
+     * the controller, unless they are coalesced.
+     */
+    private class Relay implements TextChangeListener, ValueChangeListener {
+        private static final long serialVersionUID = 1L;
+
+        private transient TextChangeEvent pending;
+        private long lastDelivery;
+
+        @Override
+        public void textChange(TextChangeEvent event) {
+            receivedTextChanges++;
+            text = event.getText();
+            if (coalescingInterval > 0) {
+                if (pending != null) {
+                    pending = null;
+                    coalescedTextChanges++;
+                }
+                if (text.equals(deliveredText)) {
+                    coalescedTextChanges++;
+                    return;
+                }
+                long elapsed = System.currentTimeMillis() - lastDelivery;
+                if (elapsed < coalescingInterval) {
+                    pending = event;
+                    return;
+                }
+            }
+            deliver(event);
+        }
+
+        @Override
+        public void valueChange(ValueChangeEvent event) {
+            text = null;
+            flush();
+        }
+
+        private void flush() {
+            if (pending != null) {
+                TextChangeEvent event = pending;
+                pending = null;
+                deliver(event);
+            }
+        }
+
+        private void deliver(TextChangeEvent event) {
+            TextChangeListener controller = getController();
+            if (controller != null) {
+                deliveredText = event.getText();
+                deliveredTextChanges++;
+                lastDelivery = System.currentTimeMillis();
+                controller.textChange(event);
+            }
+        }
+    }
 }
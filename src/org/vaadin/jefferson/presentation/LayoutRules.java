@@ -0,0 +1,298 @@
+package org.vaadin.jefferson.presentation;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.vaadin.jefferson.presentation.SmartPresentation.Orientation;
+
+import com.vaadin.ui.Alignment;
+import com.vaadin.ui.Component;
+import com.vaadin.ui.Form;
+import com.vaadin.ui.HorizontalLayout;
+import com.vaadin.ui.HorizontalSplitPanel;
+import com.vaadin.ui.ListSelect;
+import com.vaadin.ui.PasswordField;
+import com.vaadin.ui.Table;
+import com.vaadin.ui.TextField;
+import com.vaadin.ui.Tree;
+import com.vaadin.ui.TwinColSelect;
+import com.vaadin.ui.VerticalLayout;
+import com.vaadin.ui.VerticalSplitPanel;
+
+/**
+ * The rules by which a {@link SmartPresentation} lays out its renditions.
+ * Rules are registered for component types and apply to their subtypes,
+ * unless a more specific type has a rule of its own. Reading the rules takes no
+ * lock: each change publishes an immutable snapshot of all rules, in which the
+ * rules of each rendition type are resolved once and then cached, so looking
+ * them up while presenting takes constant time. The cache is not kept on the
+ * classes themselves, so it is collected together with the rules.
+ * <p>
+ * A new instance holds the default rules. Rules should be changed before the
+ * presenter using them presents any views, since views presented while a rule
+ * changes may be laid out by either version of it.
+ * 
+ * @see SmartPresentation#SmartPresentation(Orientation, LayoutRules)
+ * @author Marlon Richert @ Vaadin
+ */
+public class LayoutRules implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The weight of subtrees containing a table in horizontal split panels, by
+     * default.
+     */
+    public static final double GOLDEN_RATIO = 1.61803399;
+
+    private final Map<Class<?>, Boolean> stretching = new LinkedHashMap<>();
+    private final Map<Class<?>, Double> weights = new LinkedHashMap<>();
+    private final Map<Class<?>, Boolean> keepingHeight = new LinkedHashMap<>();
+    private final Map<Class<?>, Orientation> orientations = new LinkedHashMap<>();
+    private final Map<Orientation, Alignment> alignments = new EnumMap<>(
+            Orientation.class);
+    private boolean splitting = true;
+
+    private transient volatile Snapshot snapshot;
+
+    /**
+     * Creates rules that stretch forms, selects, tables and trees, give
+     * subtrees containing tables a golden-ratio share of horizontal split
+     * panels, keep the height of text fields, align components in vertical
+     * layouts to the top left and those in horizontal layouts to the middle
+     * left.
+     */
+    public LayoutRules() {
+        setStretching(Form.class, true);
+        setStretching(ListSelect.class, true);
+        setStretching(TwinColSelect.class, true);
+        setStretching(Table.class, true);
+        setStretching(Tree.class, true);
+        setWeight(Table.class, GOLDEN_RATIO);
+        setKeepingHeight(TextField.class, true);
+        setKeepingHeight(PasswordField.class, true);
+        setOrientation(VerticalLayout.class, Orientation.VERTICAL);
+        setOrientation(VerticalSplitPanel.class, Orientation.VERTICAL);
+        setOrientation(HorizontalLayout.class, Orientation.HORIZONTAL);
+        setOrientation(HorizontalSplitPanel.class, Orientation.HORIZONTAL);
+        setAlignment(Orientation.VERTICAL, Alignment.TOP_LEFT);
+        setAlignment(Orientation.HORIZONTAL, Alignment.MIDDLE_LEFT);
+    }
+
+    /**
+     * Publishes a snapshot of the current rules. Called by writers, while
+     * holding the lock on this instance.
+     */
+    private void publish() {
+        snapshot = new Snapshot(this);
+    }
+
+    /**
+     * Sets whether renditions of the given type fill the space available to
+     * them. Composites stretch if any of their children do.
+     * 
+     * @param stretching
+     *            Whether to stretch, or <code>null</code> to remove the rule.
+     */
+    public synchronized void setStretching(Class<? extends Component> type,
+            Boolean stretching) {
+        put(this.stretching, type, stretching);
+    }
+
+    public boolean isStretching(Class<? extends Component> type) {
+        return rule(type).stretching;
+    }
+
+    /**
+     * Sets the weight that subtrees containing renditions of the given type
+     * have when they share a horizontal split panel. A subtree weighs as much
+     * as the heaviest rendition in it. The default weight is 1.
+     * 
+     * @param weight
+     *            The weight, or <code>null</code> to remove the rule.
+     */
+    public synchronized void setWeight(Class<? extends Component> type,
+            Double weight) {
+        if (weight != null && !(weight > 0)) {
+            throw new IllegalArgumentException("Weight must be positive.");
+        }
+        put(weights, type, weight);
+    }
+
+    public double getWeight(Class<? extends Component> type) {
+        return rule(type).weight;
+    }
+
+    /**
+     * Sets whether renditions of the given type keep their own height, instead
+     * of filling the height of horizontal layouts.
+     * 
+     * @param keepingHeight
+     *            Whether to keep the height, or <code>null</code> to remove the
+     *            rule.
+     */
+    public synchronized void setKeepingHeight(
+            Class<? extends Component> type, Boolean keepingHeight) {
+        put(this.keepingHeight, type, keepingHeight);
+    }
+
+    public boolean isKeepingHeight(Class<? extends Component> type) {
+        return rule(type).keepingHeight;
+    }
+
+    /**
+     * Sets the direction in which renditions of the given type lay out their
+     * components. The children of a composite are laid out in the opposite
+     * direction of the composite itself.
+     * 
+     * @param orientation
+     *            The orientation, or <code>null</code> to remove the rule.
+     */
+    public synchronized void setOrientation(Class<? extends Component> type,
+            Orientation orientation) {
+        put(orientations, type, orientation);
+    }
+
+    /**
+     * Gets the direction in which renditions of the given type lay out their
+     * components.
+     * 
+     * @return The orientation, or <code>null</code> if the type has none.
+     */
+    public Orientation getOrientation(Class<? extends Component> type) {
+        return rule(type).orientation;
+    }
+
+    /**
+     * Sets how components that don't stretch are aligned in layouts of the
+     * given orientation.
+     * 
+     * @param alignment
+     *            The alignment, or <code>null</code> to leave components
+     *            aligned as their layout aligns them by default.
+     */
+    public synchronized void setAlignment(Orientation orientation,
+            Alignment alignment) {
+        if (alignment == null) {
+            alignments.remove(orientation);
+        } else {
+            alignments.put(orientation, alignment);
+        }
+        publish();
+    }
+
+    public Alignment getAlignment(Orientation orientation) {
+        return snapshot.alignments.get(orientation);
+    }
+
+    /**
+     * Sets whether composites with exactly two children, which both stretch,
+     * are rendered as split panels.
+     */
+    public synchronized void setSplitting(boolean splitting) {
+        this.splitting = splitting;
+        publish();
+    }
+
+    public boolean isSplitting() {
+        return snapshot.splitting;
+    }
+
+    private <V> void put(Map<Class<?>, V> table, Class<?> type, V value) {
+        if (type == null) {
+            throw new IllegalArgumentException("Type must not be null.");
+        }
+        if (value == null) {
+            table.remove(type);
+        } else {
+            table.put(type, value);
+        }
+        publish();
+    }
+
+    private Rule rule(Class<?> type) {
+        Snapshot snapshot = this.snapshot;
+        Rule rule = snapshot.rules.get(type);
+        if (rule == null) {
+            rule = new Rule(snapshot, type);
+            snapshot.rules.putIfAbsent(type, rule);
+        }
+        return rule;
+    }
+
+    /**
+     * Finds the value of the most specific rule that applies to the given
+     * type: that of its nearest superclass with a rule, or else that of the
+     * first registered interface it implements.
+     */
+    private static <V> V resolve(Map<Class<?>, V> table, Class<?> type,
+            V defaultValue) {
+        for (Class<?> level = type; level != null; level = level
+                .getSuperclass()) {
+            V value = table.get(level);
+            if (value != null) {
+                return value;
+            }
+        }
+        for (Map.Entry<Class<?>, V> entry : table.entrySet()) {
+            if (entry.getKey().isAssignableFrom(type)) {
+                return entry.getValue();
+            }
+        }
+        return defaultValue;
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException,
+            ClassNotFoundException {
+        in.defaultReadObject();
+        synchronized (this) {
+            publish();
+        }
+    }
+
+    /**
+     * An immutable copy of all rules, together with the rules resolved from
+     * it so far.
+     */
+    private static final class Snapshot {
+        private final Map<Class<?>, Boolean> stretching;
+        private final Map<Class<?>, Double> weights;
+        private final Map<Class<?>, Boolean> keepingHeight;
+        private final Map<Class<?>, Orientation> orientations;
+        private final Map<Orientation, Alignment> alignments;
+        private final boolean splitting;
+        private final ConcurrentMap<Class<?>, Rule> rules =
+                new ConcurrentHashMap<>();
+
+        private Snapshot(LayoutRules rules) {
+            stretching = new LinkedHashMap<>(rules.stretching);
+            weights = new LinkedHashMap<>(rules.weights);
+            keepingHeight = new LinkedHashMap<>(rules.keepingHeight);
+            orientations = new LinkedHashMap<>(rules.orientations);
+            alignments = new EnumMap<>(rules.alignments);
+            splitting = rules.splitting;
+        }
+    }
+
+    /**
+     * The resolved rules of one rendition type.
+     */
+    private static final class Rule {
+        private final boolean stretching;
+        private final double weight;
+        private final boolean keepingHeight;
+        private final Orientation orientation;
+
+        private Rule(Snapshot rules, Class<?> type) {
+            stretching = resolve(rules.stretching, type, false);
+            weight = resolve(rules.weights, type, 1.0);
+            keepingHeight = resolve(rules.keepingHeight, type, false);
+            orientation = resolve(rules.orientations, type, null);
+        }
+    }
+}
@@ -1,78 +1,176 @@
 package org.vaadin.jefferson.presentation;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
 import org.vaadin.jefferson.Composite;
+import org.vaadin.jefferson.GenerateDispatcher;
 import org.vaadin.jefferson.Presenter;
 import org.vaadin.jefferson.View;
 
 import com.vaadin.terminal.Sizeable;
+import com.vaadin.ui.AbstractOrderedLayout;
 import com.vaadin.ui.AbstractSplitPanel;
 import com.vaadin.ui.Alignment;
 import com.vaadin.ui.Component;
 import com.vaadin.ui.ComponentContainer;
-import com.vaadin.ui.Form;
 import com.vaadin.ui.HorizontalLayout;
 import com.vaadin.ui.HorizontalSplitPanel;
-import com.vaadin.ui.ListSelect;
-import com.vaadin.ui.PasswordField;
-import com.vaadin.ui.Table;
-import com.vaadin.ui.TextField;
-import com.vaadin.ui.Tree;
-import com.vaadin.ui.TwinColSelect;
 import com.vaadin.ui.VerticalLayout;
 import com.vaadin.ui.VerticalSplitPanel;
 
+@GenerateDispatcher
 public class SmartPresentation extends Presenter {
-    private static final double GOLDEN_RATIO = 1.61803399;
+    private static final long serialVersionUID = 1L;
 
     public enum Orientation {
         HORIZONTAL, VERTICAL,
     }
 
     private Orientation defaultOrientation;
+    private final LayoutRules rules;
+
+    /*
+     * Layout facts about subtrees, memoized for the duration of the current
+     * presentation pass. Synchronized, since subtrees may be presented in
+     * parallel, and not serialized, since they are recreated when read.
+     */
+    private transient Map<View<?>, Boolean> stretchMemo;
+    private transient Map<View<?>, Double> weightMemo;
+
+    /*
+     * The layout chosen for each composite by renditionType(Composite), kept
+     * until the composite is rendered, so that reconciling does not choose it
+     * twice.
+     */
+    private transient Map<View<?>, Class<? extends ComponentContainer>> layoutMemo;
 
     public SmartPresentation(Orientation orientation) {
+        this(orientation, new LayoutRules());
+    }
+
+    /**
+     * Creates a presenter that lays out its renditions by the given rules.
+     */
+    public SmartPresentation(Orientation orientation, LayoutRules rules) {
+        if (rules == null) {
+            throw new IllegalArgumentException("Rules must not be null.");
+        }
         defaultOrientation = orientation;
+        this.rules = rules;
+        initMemos();
+    }
+
+    private void initMemos() {
+        stretchMemo = Collections
+                .synchronizedMap(new IdentityHashMap<View<?>, Boolean>());
+        weightMemo = Collections
+                .synchronizedMap(new IdentityHashMap<View<?>, Double>());
+        layoutMemo = Collections
+                .synchronizedMap(new IdentityHashMap<View<?>, Class<? extends ComponentContainer>>());
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException,
+            ClassNotFoundException {
+        in.defaultReadObject();
+        initMemos();
+    }
+
+    public LayoutRules getRules() {
+        return rules;
+    }
+
+    @Override
+    protected void passFinished() {
+        stretchMemo.clear();
+        weightMemo.clear();
+        layoutMemo.clear();
+    }
+
+    @Override
+    protected void childrenChanged(Composite<?> composite) {
+        for (View<?> view = composite; view != null; view = view.getParent()) {
+            stretchMemo.remove(view);
+            weightMemo.remove(view);
+            layoutMemo.remove(view);
+        }
+    }
+
+    /**
+     * Returns what the parent's layout depends on: the view's rendition type,
+     * whether it stretches and its weight.
+     */
+    @Override
+    protected Object layoutFacts(View<?> view) {
+        Component rendition = getRendition(view);
+        return Arrays.asList(rendition == null ? null : rendition.getClass(),
+                stretches(view), weight(view));
     }
 
     protected void render(Composite<ComponentContainer> view) {
+        Class<? extends ComponentContainer> type = layoutMemo.remove(view);
+        if (type == null) {
+            type = renditionType(view);
+            layoutMemo.remove(view);
+        }
+        setRendition(view, createLayout(type));
+        // The children's layouts depend on this one.
+        for (int i = 0; i < view.getChildCount(); i++) {
+            layoutMemo.remove(view.getChild(i));
+        }
+    }
+
+    protected Class<? extends ComponentContainer> renditionType(
+            Composite<ComponentContainer> view) {
         Composite<?> parent = view.getParent();
-        setRendition(view, getRendition(view, invert(getOrientation(parent))));
+        Class<? extends ComponentContainer> type = chooseLayout(view,
+                invert(getOrientation(parent)));
+        layoutMemo.put(view, type);
+        return type;
     }
 
     protected void style(Composite<?> view) {
         ComponentContainer rendition = getRendition(view);
-        View<?>[] children = view.getChildren();
+        int childCount = view.getChildCount();
         if (rendition instanceof AbstractSplitPanel) {
             double weightA = 1;
             double weightB = 1;
-            if (rendition instanceof HorizontalSplitPanel) {
-                if (containsTable(children[0])) {
-                    weightA = GOLDEN_RATIO;
-                }
-                if (containsTable(children[1])) {
-                    weightB = GOLDEN_RATIO;
-                }
+            if (getOrientation(view) == Orientation.HORIZONTAL) {
+                weightA = weight(view.getChild(0));
+                weightB = weight(view.getChild(1));
             }
             ((AbstractSplitPanel) rendition).setSplitPosition(
                     (int) (100 * weightA / (weightA + weightB)));
         }
-        if (!stretches(view)) {
-            expand(getRendition(children[children.length - 1]));
+        if (!view.isDeferred() && childCount > 0 && !stretches(view)) {
+            expand(getRendition(view.getChild(childCount - 1)));
         }
         style((View<?>) view);
     }
 
-    private boolean containsTable(View<?> view) {
+    /**
+     * Gets the weight of the heaviest rendition in the given subtree.
+     */
+    private double weight(View<?> view) {
         if (!(view instanceof Composite<?>)) {
-            return getRendition(view) instanceof Table;
+            Component rendition = getRendition(view);
+            return rendition == null ? 1 : rules.getWeight(rendition
+                    .getClass());
         }
-        Composite<?> composite = (Composite<?>) view;
-        for (View<?> child : composite.getChildren()) {
-            if (containsTable(child)) {
-                return true;
+        Double memo = weightMemo.get(view);
+        if (memo == null) {
+            memo = 1.0;
+            Composite<?> composite = (Composite<?>) view;
+            for (int i = 0; i < composite.getChildCount(); i++) {
+                memo = Math.max(memo, weight(composite.getChild(i)));
             }
+            weightMemo.put(view, memo);
         }
-        return false;
+        return memo;
     }
 
     @Override
@@ -88,22 +186,17 @@ public class SmartPresentation extends Presenter {
         } else {
             rendition.setSizeUndefined();
             Orientation parentOrientation = getOrientation(view.getParent());
-            if (parentOrientation == Orientation.VERTICAL) {
-                rendition.setSizeUndefined();
-                if (parentRendition instanceof VerticalLayout) {
-                    ((VerticalLayout) parentRendition).setComponentAlignment(
-                            rendition, Alignment.TOP_LEFT);
-                }
-            } else if (parentOrientation == Orientation.HORIZONTAL) {
-                if (!(rendition instanceof TextField || rendition instanceof PasswordField)) {
-                    rendition.setHeight(100, Sizeable.UNITS_PERCENTAGE);
-                }
-                if (parentRendition instanceof HorizontalLayout) {
-                    ((HorizontalLayout) parentRendition).setComponentAlignment(
-                            rendition, Alignment.MIDDLE_LEFT);
-                }
+            if (parentOrientation == Orientation.HORIZONTAL
+                    && !rules.isKeepingHeight(rendition.getClass())) {
+                rendition.setHeight(100, Sizeable.UNITS_PERCENTAGE);
+            }
+            Alignment alignment = parentOrientation == null ? null : rules
+                    .getAlignment(parentOrientation);
+            if (alignment != null
+                    && parentRendition instanceof AbstractOrderedLayout) {
+                ((AbstractOrderedLayout) parentRendition)
+                        .setComponentAlignment(rendition, alignment);
             }
-
         }
     }
 
@@ -117,54 +210,71 @@ public class SmartPresentation extends Presenter {
         return output;
     }
 
-    private ComponentContainer getRendition(
+    private static ComponentContainer createLayout(
+            Class<? extends ComponentContainer> type) {
+        if (type == VerticalLayout.class) {
+            return new VerticalLayout();
+        } else if (type == HorizontalLayout.class) {
+            return new HorizontalLayout();
+        } else if (type == HorizontalSplitPanel.class) {
+            return new HorizontalSplitPanel();
+        } else if (type == VerticalSplitPanel.class) {
+            return new VerticalSplitPanel();
+        }
+        // A layout chosen by a subclass.
+        try {
+            return type.newInstance();
+        } catch (InstantiationException | IllegalAccessException e) {
+            throw new IllegalStateException("Can't create a " + type, e);
+        }
+    }
+
+    private Class<? extends ComponentContainer> chooseLayout(
             Composite<ComponentContainer> view, Orientation orientation) {
-        View<?>[] children = view.getChildren();
-        if (children.length == 2) {
-            if (stretches(children[0]) && stretches(children[1])) {
+        if (rules.isSplitting() && view.getChildCount() == 2) {
+            if (stretches(view.getChild(0)) && stretches(view.getChild(1))) {
                 if (orientation == Orientation.HORIZONTAL) {
-                    return new HorizontalSplitPanel();
+                    return HorizontalSplitPanel.class;
                 } else if (orientation == Orientation.VERTICAL) {
-                    return new VerticalSplitPanel();
+                    return VerticalSplitPanel.class;
                 }
             }
         }
         if (orientation == Orientation.HORIZONTAL
                 && !(getRendition(view.getParent()) instanceof AbstractSplitPanel)) {
-            return new HorizontalLayout();
+            return HorizontalLayout.class;
         }
-        return new VerticalLayout();
+        return VerticalLayout.class;
     }
 
     private boolean stretches(View<?> view) {
+        Boolean memo = stretchMemo.get(view);
+        if (memo != null) {
+            return memo;
+        }
         if (view instanceof Composite<?>) {
-            boolean stretches = false;
-            for (View<?> child : ((Composite<?>) view).getChildren()) {
-                stretches |= stretches(child);
+            memo = false;
+            Composite<?> composite = (Composite<?>) view;
+            for (int i = 0; i < composite.getChildCount(); i++) {
+                memo |= stretches(composite.getChild(i));
             }
-            return stretches;
-        }
-        Component rendition = getRendition(view);
-        if (rendition == null) {
-            call(MethodName.RENDER, view);
-            rendition = getRendition(view);
+        } else {
+            Class<? extends Component> type = getRenditionType(view);
+            if (type == null) {
+                call(MethodName.RENDER, view);
+                type = getRendition(view).getClass();
+            }
+            memo = rules.isStretching(type);
         }
-        return rendition instanceof Form
-                || rendition instanceof ListSelect
-                || rendition instanceof TwinColSelect
-                || rendition instanceof Table
-                || rendition instanceof Tree;
+        stretchMemo.put(view, memo);
+        return memo;
     }
 
     private Orientation getOrientation(View<?> view) {
         if (view != null) {
             Component rendition = getRendition(view);
-            if (rendition instanceof VerticalLayout
-                    || rendition instanceof VerticalSplitPanel) {
-                return Orientation.VERTICAL;
-            } else if (rendition instanceof HorizontalLayout
-                    || rendition instanceof HorizontalSplitPanel) {
-                return Orientation.HORIZONTAL;
+            if (rendition != null) {
+                return rules.getOrientation(rendition.getClass());
             }
         }
         return null;
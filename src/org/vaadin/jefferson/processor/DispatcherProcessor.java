@@ -0,0 +1,404 @@
+/*
+ * Copyright 2011, 2012 Vaadin Ltd.
+ * 
+ * Licensed under the GNU Affero General Public License, Version 3 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at
+ * 
+ * http://www.gnu.org/licenses/agpl.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.vaadin.jefferson.processor;
+
+import java.io.*;
+import java.util.*;
+
+import javax.annotation.processing.*;
+import javax.lang.model.*;
+import javax.lang.model.element.*;
+import javax.lang.model.type.*;
+import javax.lang.model.util.*;
+import javax.tools.*;
+import javax.tools.Diagnostic.Kind;
+
+/**
+ * Generates a {@link org.vaadin.jefferson.Dispatcher} for each concrete,
+ * top-level subclass of {@link org.vaadin.jefferson.Presenter} being compiled
+ * that is annotated with {@link org.vaadin.jefferson.GenerateDispatcher}.
+ * Other classes are left alone.
+ * <p>
+ * The generated dispatcher checks the view's type against the parameter types
+ * of the presenter's <code>render</code> and <code>style</code> overloads,
+ * in the same order in which {@link org.vaadin.jefferson.Presenter} would find
+ * them by reflection, and calls the first matching one directly.
+ * <code>renditionType</code> overloads are only called for the views handled
+ * by the <code>render</code> overload with the same declaring class and
+ * parameter type. For any other view, reflection would find a
+ * <code>renditionType</code> overload that does not match the
+ * <code>render</code> one, so the generated code returns <code>null</code>,
+ * as {@link org.vaadin.jefferson.Presenter} does.
+ * <p>
+ * Methods with these names whose parameter is not a subclass of
+ * {@link org.vaadin.jefferson.View}, such as helpers that style components,
+ * are not overloads that can be dispatched to, and are skipped. If a
+ * presenter has an overload that generated code cannot call,
+ * such as a private method, no dispatcher is generated for it and it keeps
+ * using reflection.
+ * 
+ * @author Marlon Richert @ Vaadin
+ */
+@SupportedAnnotationTypes(DispatcherProcessor.GENERATE_DISPATCHER)
+public class DispatcherProcessor extends AbstractProcessor {
+    static final String GENERATE_DISPATCHER = "org.vaadin.jefferson.GenerateDispatcher";
+    private static final String PRESENTER = "org.vaadin.jefferson.Presenter";
+    private static final String VIEW = "org.vaadin.jefferson.View";
+    private static final String DISPATCHER = "org.vaadin.jefferson.Dispatcher";
+    private static final String SUFFIX = "_Dispatcher";
+    private static final String RENDER = "render";
+    private static final String RENDITION_TYPE = "renditionType";
+    private static final List<String> METHOD_NAMES = Arrays.asList(RENDER,
+            "style");
+
+    private Elements elements;
+    private Types types;
+    private Messager messager;
+    private Filer filer;
+
+    @Override
+    public synchronized void init(ProcessingEnvironment env) {
+        super.init(env);
+        elements = env.getElementUtils();
+        types = env.getTypeUtils();
+        messager = env.getMessager();
+        filer = env.getFiler();
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations,
+            RoundEnvironment roundEnv) {
+        TypeElement presenter = elements.getTypeElement(PRESENTER);
+        TypeElement view = elements.getTypeElement(VIEW);
+        TypeElement annotation = elements.getTypeElement(GENERATE_DISPATCHER);
+        if (presenter == null || view == null || annotation == null) {
+            return false;
+        }
+        for (TypeElement type : ElementFilter.typesIn(roundEnv
+                .getElementsAnnotatedWith(annotation))) {
+            if (type.getKind() == ElementKind.CLASS
+                    && !type.equals(presenter)
+                    && types.isSubtype(types.erasure(type.asType()),
+                            types.erasure(presenter.asType()))) {
+                process(type, presenter, view);
+            } else {
+                messager.printMessage(Kind.WARNING, "Can't generate a "
+                        + "dispatcher for " + type + ", since it is not a "
+                        + "subclass of " + PRESENTER + ".", type);
+            }
+        }
+        return false;
+    }
+
+    private void process(TypeElement type, TypeElement presenter,
+            TypeElement view) {
+        String packageName = elements.getPackageOf(type).getQualifiedName()
+                .toString();
+        boolean dispatchable = true;
+
+        Map<String, List<ExecutableElement>> chains = new LinkedHashMap<>();
+        for (String methodName : METHOD_NAMES) {
+            chains.put(methodName, new ArrayList<ExecutableElement>());
+        }
+        /*
+         * A renditionType method is only used for views that the render
+         * method with the same declaring class and parameter type handles, so
+         * its chain mirrors the render chain, with null where there is none.
+         * The renditionType overloads that reflection would find before the
+         * matching one shadow it, so they are kept for each render method.
+         * Views that fall through to the base class are shadowed by all of
+         * them, except those that a render method handles before.
+         */
+        List<ExecutableElement> renditionTypes = new ArrayList<>();
+        Map<ExecutableElement, List<ExecutableElement>> shadows = new HashMap<>();
+        List<ExecutableElement> declaredTypes = new ArrayList<>();
+        TypeElement level = type;
+        while (!level.equals(presenter)) {
+            List<ExecutableElement> levelTypes = getOverloads(level,
+                    RENDITION_TYPE, view);
+            for (ExecutableElement candidate : levelTypes) {
+                dispatchable &= checkAccessible(type, candidate, level,
+                        packageName);
+            }
+            for (String methodName : METHOD_NAMES) {
+                List<ExecutableElement> chain = chains.get(methodName);
+                if (isComplete(chain, view)) {
+                    continue;
+                }
+                for (ExecutableElement method : getOverloads(level,
+                        methodName, view)) {
+                    dispatchable &= checkAccessible(type, method, level,
+                            packageName);
+                    chain.add(method);
+                    if (methodName.equals(RENDER)) {
+                        ExecutableElement renditionType = null;
+                        for (ExecutableElement candidate : levelTypes) {
+                            if (parameterOf(candidate).equals(
+                                    parameterOf(method))) {
+                                renditionType = candidate;
+                            }
+                        }
+                        renditionTypes.add(renditionType);
+                        shadows.put(method, getShadows(method,
+                                declaredTypes, levelTypes));
+                    }
+                }
+            }
+            declaredTypes.addAll(levelTypes);
+            level = superclassOf(level);
+        }
+        chains.put(RENDITION_TYPE, renditionTypes);
+        List<ExecutableElement> baseShadows = new ArrayList<>();
+        for (ExecutableElement candidate : declaredTypes) {
+            if (!isHandled(candidate, chains.get(RENDER))) {
+                baseShadows.add(candidate);
+            }
+        }
+
+        if (dispatchable && !type.getModifiers().contains(Modifier.ABSTRACT)
+                && type.getNestingKind() == NestingKind.TOP_LEVEL) {
+            try {
+                write(type, packageName, chains, shadows, baseShadows);
+            } catch (IOException e) {
+                messager.printMessage(Kind.ERROR,
+                        "Can't write dispatcher for " + type + ": " + e, type);
+            }
+        }
+    }
+
+    /**
+     * Returns the given level's single-argument overloads with the given name,
+     * with the most specific parameter types first.
+     */
+    private List<ExecutableElement> getOverloads(TypeElement level,
+            String methodName, TypeElement view) {
+        List<ExecutableElement> overloads = new ArrayList<>();
+        for (ExecutableElement method : ElementFilter.methodsIn(level
+                .getEnclosedElements())) {
+            if (!method.getSimpleName().contentEquals(methodName)
+                    || method.getParameters().size() != 1) {
+                continue;
+            }
+            TypeMirror parameter = types.erasure(method.getParameters().get(0)
+                    .asType());
+            Element parameterElement = types.asElement(parameter);
+            if (parameterElement == null
+                    || parameterElement.getKind() != ElementKind.CLASS
+                    || !types.isSubtype(parameter,
+                            types.erasure(view.asType()))) {
+                // Not an overload for views, such as a helper method.
+                continue;
+            }
+            overloads.add(method);
+        }
+        Collections.sort(overloads, new Comparator<ExecutableElement>() {
+            @Override
+            public int compare(ExecutableElement a, ExecutableElement b) {
+                return depthOf(parameterOf(b)) - depthOf(parameterOf(a));
+            }
+        });
+        return overloads;
+    }
+
+    /**
+     * Returns the <code>renditionType</code> overloads that reflection could
+     * find for a view handled by the given <code>render</code> method before
+     * the one on the same level with the same parameter type: the related ones
+     * declared by subclasses of that level, and the more specific ones of the
+     * level itself.
+     */
+    private List<ExecutableElement> getShadows(ExecutableElement render,
+            List<ExecutableElement> declaredTypes,
+            List<ExecutableElement> levelTypes) {
+        TypeElement parameter = parameterOf(render);
+        List<ExecutableElement> shadows = new ArrayList<>();
+        for (ExecutableElement candidate : declaredTypes) {
+            TypeElement other = parameterOf(candidate);
+            if (isSubclass(other, parameter) || isSubclass(parameter, other)) {
+                shadows.add(candidate);
+            }
+        }
+        for (ExecutableElement candidate : levelTypes) {
+            TypeElement other = parameterOf(candidate);
+            if (!other.equals(parameter) && isSubclass(other, parameter)) {
+                shadows.add(candidate);
+            }
+        }
+        return shadows;
+    }
+
+    /**
+     * Tells whether the views of the given method's parameter type are all
+     * handled by one of the given methods.
+     */
+    private boolean isHandled(ExecutableElement method,
+            List<ExecutableElement> chain) {
+        for (ExecutableElement handler : chain) {
+            if (isSubclass(parameterOf(method), parameterOf(handler))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isSubclass(TypeElement a, TypeElement b) {
+        return types.isSubtype(types.erasure(a.asType()),
+                types.erasure(b.asType()));
+    }
+
+    private boolean isComplete(List<ExecutableElement> chain, TypeElement view) {
+        return !chain.isEmpty()
+                && parameterOf(chain.get(chain.size() - 1)).equals(view);
+    }
+
+    private boolean checkAccessible(TypeElement type,
+            ExecutableElement method, TypeElement level, String packageName) {
+        if (isAccessible(method, level, packageName)) {
+            return true;
+        }
+        messager.printMessage(Kind.NOTE, type
+                + " will use reflective dispatch, because " + method
+                + " is not accessible from " + packageName + ".", method);
+        return false;
+    }
+
+    private boolean isAccessible(ExecutableElement method, TypeElement level,
+            String packageName) {
+        Set<Modifier> modifiers = method.getModifiers();
+        if (modifiers.contains(Modifier.PRIVATE)
+                || level.getModifiers().contains(Modifier.PRIVATE)) {
+            return false;
+        }
+        boolean samePackage = elements.getPackageOf(level).getQualifiedName()
+                .contentEquals(packageName);
+        return samePackage
+                || (modifiers.contains(Modifier.PUBLIC) && level
+                        .getModifiers().contains(Modifier.PUBLIC));
+    }
+
+    private void write(TypeElement type, String packageName,
+            Map<String, List<ExecutableElement>> chains,
+            Map<ExecutableElement, List<ExecutableElement>> shadows,
+            List<ExecutableElement> baseShadows) throws IOException {
+        String simpleName = type.getSimpleName() + SUFFIX;
+        JavaFileObject file = filer.createSourceFile(packageName.isEmpty()
+                ? simpleName : packageName + "." + simpleName, type);
+        try (PrintWriter out = new PrintWriter(file.openWriter())) {
+            if (!packageName.isEmpty()) {
+                out.println("package " + packageName + ";");
+                out.println();
+            }
+            out.println("// Generated by " + getClass().getName() + ".");
+            out.println("public final class " + simpleName + " extends "
+                    + DISPATCHER + " {");
+            out.println();
+            out.println("    @Override");
+            out.println("    @SuppressWarnings({ \"unchecked\", \"rawtypes\" })");
+            out.println("    protected Object call(String methodName, "
+                    + PRESENTER + " presenter, " + VIEW + "<?> view) {");
+            out.println("        switch (methodName) {");
+            for (Map.Entry<String, List<ExecutableElement>> entry : chains
+                    .entrySet()) {
+                out.println("        case \"" + entry.getKey() + "\":");
+                boolean renditionType = entry.getKey().equals(RENDITION_TYPE);
+                List<ExecutableElement> guards = renditionType ? chains
+                        .get(RENDER) : entry.getValue();
+                boolean complete = false;
+                for (int i = 0; i < guards.size(); i++) {
+                    TypeElement parameter = parameterOf(guards.get(i));
+                    ExecutableElement method = entry.getValue().get(i);
+                    String indent = "            ";
+                    complete = parameter.getQualifiedName().contentEquals(VIEW);
+                    if (!complete) {
+                        out.println(indent + "if (view instanceof "
+                                + parameter.getQualifiedName() + ") {");
+                        indent += "    ";
+                    }
+                    if (renditionType && method != null) {
+                        writeShadows(out, indent,
+                                shadows.get(guards.get(i)));
+                    }
+                    if (method == null) {
+                        out.println(indent + "return null;");
+                    } else {
+                        String owner = types.erasure(
+                                method.getEnclosingElement().asType())
+                                .toString();
+                        String call = "((" + owner + ") presenter)."
+                                + method.getSimpleName() + "(("
+                                + parameter.getQualifiedName() + ") view)";
+                        if (method.getReturnType().getKind() == TypeKind.VOID) {
+                            out.println(indent + call + ";");
+                            out.println(indent + "return null;");
+                        } else {
+                            out.println(indent + "return " + call + ";");
+                        }
+                    }
+                    if (!complete) {
+                        out.println("            }");
+                    }
+                }
+                if (!complete) {
+                    if (renditionType) {
+                        writeShadows(out, "            ", baseShadows);
+                    }
+                    out.println("            break;");
+                }
+            }
+            out.println("        }");
+            out.println("        return callBase(methodName, presenter, view);");
+            out.println("    }");
+            out.println("}");
+        }
+    }
+
+    /**
+     * Writes code that returns <code>null</code> for the views that the given
+     * <code>renditionType</code> overloads would be found for.
+     */
+    private void writeShadows(PrintWriter out, String indent,
+            List<ExecutableElement> shadowing) {
+        for (ExecutableElement method : shadowing) {
+            out.println(indent + "if (view instanceof "
+                    + parameterOf(method).getQualifiedName() + ") {");
+            out.println(indent + "    return null;");
+            out.println(indent + "}");
+        }
+    }
+
+    private TypeElement superclassOf(TypeElement type) {
+        return (TypeElement) types.asElement(type.getSuperclass());
+    }
+
+    private TypeElement parameterOf(ExecutableElement method) {
+        return (TypeElement) types.asElement(types.erasure(method
+                .getParameters().get(0).asType()));
+    }
+
+    private int depthOf(TypeElement type) {
+        int depth = 0;
+        while (type.getSuperclass().getKind() == TypeKind.DECLARED) {
+            type = superclassOf(type);
+            depth++;
+        }
+        return depth;
+    }
+}
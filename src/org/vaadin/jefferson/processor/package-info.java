@@ -0,0 +1,8 @@
+/**
+ * Compile-time support for {@link org.vaadin.jefferson.Presenter}s. Annotate
+ * your presenters with {@link org.vaadin.jefferson.GenerateDispatcher} and
+ * run {@link org.vaadin.jefferson.processor.DispatcherProcessor} explicitly,
+ * for example with <code>-processor</code>, to generate a
+ * {@link org.vaadin.jefferson.Dispatcher} for each of them.
+ */
+package org.vaadin.jefferson.processor;
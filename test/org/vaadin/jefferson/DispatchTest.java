@@ -0,0 +1,78 @@
+/*
+ * Copyright 2011, 2012 Vaadin Ltd.
+ * 
+ * Licensed under the GNU Affero General Public License, Version 3 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at
+ * 
+ * http://www.gnu.org/licenses/agpl.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.vaadin.jefferson;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.vaadin.jefferson.Presenter.MethodName;
+import org.vaadin.jefferson.TestViews.Panel;
+import org.vaadin.jefferson.TestViews.Text;
+import org.vaadin.jefferson.content.ButtonControl;
+import org.vaadin.jefferson.content.SimpleComposite;
+import org.vaadin.jefferson.content.TextControl;
+
+import com.vaadin.ui.TextField;
+import com.vaadin.ui.VerticalLayout;
+
+/**
+ * Checks that a generated {@link Dispatcher} and reflective dispatch find the
+ * same rendition types.
+ */
+public class DispatchTest {
+
+    /**
+     * Adds no methods, and has no dispatcher of its own, so it dispatches by
+     * reflection to the methods of its superclass.
+     */
+    static class ReflectivePresenter extends OverloadingPresenter {
+        private static final long serialVersionUID = 1L;
+    }
+
+    private final Presenter generated = new OverloadingPresenter();
+    private final Presenter reflective = new ReflectivePresenter();
+
+    @Test
+    public void dispatcherIsGenerated() throws ClassNotFoundException {
+        assertTrue(Dispatcher.class.isAssignableFrom(Class
+                .forName(OverloadingPresenter.class.getName()
+                        + Dispatcher.SUFFIX)));
+    }
+
+    @Test
+    public void renditionTypeMatchingRender() {
+        assertRenditionType(VerticalLayout.class, new Panel("panel"));
+    }
+
+    @Test
+    public void renditionTypeWithoutMatchingRender() {
+        assertRenditionType(null, new SimpleComposite("composite"));
+        assertRenditionType(null, new ButtonControl("button"));
+    }
+
+    @Test
+    public void baseRenditionType() {
+        assertRenditionType(TextField.class, new TextControl("text"));
+        assertRenditionType(null, new Text("text"));
+    }
+
+    private void assertRenditionType(Class<?> expected, View<?> view) {
+        assertEquals(expected, generated.call(MethodName.RENDITION_TYPE,
+                view));
+        assertEquals(expected, reflective.call(MethodName.RENDITION_TYPE,
+                view));
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2011, 2012 Vaadin Ltd.
+ * 
+ * Licensed under the GNU Affero General Public License, Version 3 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at
+ * 
+ * http://www.gnu.org/licenses/agpl.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.vaadin.jefferson;
+
+import org.vaadin.jefferson.content.ButtonControl;
+import org.vaadin.jefferson.content.SimpleComposite;
+
+import com.vaadin.ui.*;
+
+/**
+ * A presenter with <code>renditionType</code> overloads that do and don't
+ * have a matching <code>render</code> overload, for which a dispatcher is
+ * generated when the tests are compiled.
+ */
+@GenerateDispatcher
+public class OverloadingPresenter extends Presenter {
+    private static final long serialVersionUID = 1L;
+
+    protected void render(Composite<ComponentContainer> view) {
+        super.render(view);
+    }
+
+    protected Class<? extends Component> renditionType(
+            Composite<ComponentContainer> view) {
+        return VerticalLayout.class;
+    }
+
+    /**
+     * Shadows {@link #renditionType(Composite)} for simple composites, since
+     * there is no <code>render(SimpleComposite)</code>.
+     */
+    protected Class<? extends Component> renditionType(SimpleComposite view) {
+        return HorizontalLayout.class;
+    }
+
+    /**
+     * Shadows {@link Presenter#renditionType(View)} for buttons, since there
+     * is no <code>render(ButtonControl)</code>.
+     */
+    protected Class<? extends Component> renditionType(ButtonControl view) {
+        return CheckBox.class;
+    }
+}
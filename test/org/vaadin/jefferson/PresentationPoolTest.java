@@ -0,0 +1,52 @@
+/*
+ * Copyright 2011, 2012 Vaadin Ltd.
+ * 
+ * Licensed under the GNU Affero General Public License, Version 3 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at
+ * 
+ * http://www.gnu.org/licenses/agpl.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.vaadin.jefferson;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.vaadin.jefferson.TestViews.Panel;
+import org.vaadin.jefferson.content.StaticText;
+
+import com.vaadin.ui.Label;
+
+/**
+ * Checks that presentations reused from a {@link PresentationPool} keep the
+ * content that their views derive from their names.
+ */
+public class PresentationPoolTest {
+
+    @Test
+    public void reusedLabelKeepsItsText() {
+        PresentationPool pool = new PresentationPool(4);
+        Presenter presenter = new Presenter();
+        presenter.setReconciling(true);
+        presenter.setPresentationPool(pool);
+
+        StaticText text = new StaticText("Hello");
+        Panel panel = new Panel("panel", text);
+        presenter.visit(panel);
+        Label presentation = text.getPresentation();
+        presenter.release(panel);
+        assertEquals(1, pool.size());
+
+        StaticText reusing = new StaticText("Hello");
+        presenter.visit(new Panel("panel", reusing));
+        assertEquals(1, pool.getHits());
+        assertSame(presentation, reusing.getPresentation());
+        assertEquals("Hello", reusing.getPresentation().getValue());
+    }
+}
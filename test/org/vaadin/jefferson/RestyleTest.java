@@ -0,0 +1,119 @@
+/*
+ * Copyright 2011, 2012 Vaadin Ltd.
+ * 
+ * Licensed under the GNU Affero General Public License, Version 3 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at
+ * 
+ * http://www.gnu.org/licenses/agpl.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.vaadin.jefferson;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.vaadin.jefferson.TestViews.Panel;
+import org.vaadin.jefferson.TestViews.Text;
+import org.vaadin.jefferson.content.ButtonControl;
+
+import com.vaadin.ui.*;
+
+/**
+ * Checks that restyling after a subtree change keeps the presentations of
+ * views whose rendition type is unknown, and that it is not held off by a
+ * presentation pass on another thread.
+ */
+public class RestyleTest {
+    /**
+     * Holds up the presentation pass that accepts it until released.
+     */
+    static class Blocking extends Text {
+        private static final long serialVersionUID = 1L;
+
+        private final CountDownLatch accepted = new CountDownLatch(1);
+        private final CountDownLatch released = new CountDownLatch(1);
+
+        Blocking() {
+            super("blocking");
+        }
+
+        @Override
+        protected Label accept(Presenter presenter) {
+            Label presentation = super.accept(presenter);
+            accepted.countDown();
+            try {
+                released.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return presentation;
+        }
+    }
+
+    private Presenter presenter;
+    private Panel root;
+    private Panel inner;
+    private ButtonControl button;
+    private Text text;
+
+    @Before
+    public void setUp() {
+        button = new ButtonControl("button");
+        text = new Text("text");
+        inner = new Panel("inner", button, text);
+        root = new Panel("root", inner);
+        presenter = new Presenter();
+        presenter.visit(root);
+    }
+
+    @Test
+    public void replaceChildKeepsOtherPresentations() {
+        ComponentContainer rootPresentation = root.getPresentation();
+        ComponentContainer innerPresentation = inner.getPresentation();
+        Label textPresentation = text.getPresentation();
+
+        Text replacement = new Text("replacement");
+        assertTrue(inner.replaceChild(button, replacement));
+
+        assertEquals(1, root.getFallbacksCreated());
+        assertEquals(1, inner.getFallbacksCreated());
+        assertEquals(1, text.getFallbacksCreated());
+        assertEquals(1, replacement.getFallbacksCreated());
+        assertSame(rootPresentation, root.getPresentation());
+        assertSame(innerPresentation, inner.getPresentation());
+        assertSame(textPresentation, text.getPresentation());
+        assertSame(innerPresentation, replacement.getPresentation()
+                .getParent());
+    }
+
+    @Test
+    public void replaceChildRestylesDuringOtherThreadsPass()
+            throws InterruptedException {
+        final Blocking blocking = new Blocking();
+        Thread other = new Thread() {
+            @Override
+            public void run() {
+                presenter.visit(new Panel("other", blocking));
+            }
+        };
+        other.start();
+        try {
+            blocking.accepted.await();
+            assertTrue(inner.replaceChild(button, new Text("replacement")));
+            assertFalse(root.isChanged());
+            assertFalse(inner.isChanged());
+        } finally {
+            blocking.released.countDown();
+            other.join();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2011, 2012 Vaadin Ltd.
+ * 
+ * Licensed under the GNU Affero General Public License, Version 3 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at
+ * 
+ * http://www.gnu.org/licenses/agpl.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.vaadin.jefferson;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Checks that {@link Presenter#toStyleName(String)} converts view names the
+ * same way as the regular expressions it replaced.
+ */
+public class StyleNameTest {
+
+    private static String toStyleNameByRegex(String name) {
+        return name.replaceAll("\\s+", "-").replaceAll("[^-_a-zA-Z]", "")
+                .toLowerCase();
+    }
+
+    private static void check(String name) {
+        assertEquals(name, toStyleNameByRegex(name),
+                Presenter.toStyleName(name));
+    }
+
+    @Test
+    public void plainNames() {
+        check("");
+        check("name");
+        check("Mixed Case Name");
+        check("with-dashes_and_underscores");
+    }
+
+    @Test
+    public void whitespace() {
+        check("two  spaces");
+        check("tab\tand\nnewline");
+        check("run \t\r\n\f\u000B of whitespace");
+        check(" leading");
+        check("trailing ");
+        check(" \t ");
+        check("-\t-");
+    }
+
+    @Test
+    public void droppedCharacters() {
+        check("room 101");
+        check("2nd try");
+        check("a.b#c:d");
+        check("Übergrößenträger");
+        check("café crème");
+        check(" no-break space");
+        check("日本語");
+    }
+}
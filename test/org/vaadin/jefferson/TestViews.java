@@ -0,0 +1,68 @@
+/*
+ * Copyright 2011, 2012 Vaadin Ltd.
+ * 
+ * Licensed under the GNU Affero General Public License, Version 3 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at
+ * 
+ * http://www.gnu.org/licenses/agpl.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.vaadin.jefferson;
+
+import com.vaadin.ui.*;
+
+/**
+ * Views that do not declare their fallback types, so that presenters can't
+ * tell their rendition types, and that count how many fallbacks they created.
+ */
+final class TestViews {
+
+    private TestViews() {
+    }
+
+    static class Panel extends Composite<ComponentContainer> {
+        private static final long serialVersionUID = 1L;
+
+        private int fallbacksCreated;
+
+        Panel(String name, View<?>... children) {
+            super(name, ComponentContainer.class, children);
+        }
+
+        @Override
+        public ComponentContainer createFallback() {
+            fallbacksCreated++;
+            return new CssLayout();
+        }
+
+        int getFallbacksCreated() {
+            return fallbacksCreated;
+        }
+    }
+
+    static class Text extends View<Label> {
+        private static final long serialVersionUID = 1L;
+
+        private int fallbacksCreated;
+
+        Text(String name) {
+            super(name, Label.class);
+        }
+
+        @Override
+        public Label createFallback() {
+            fallbacksCreated++;
+            return new Label();
+        }
+
+        int getFallbacksCreated() {
+            return fallbacksCreated;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2011, 2012 Vaadin Ltd.
+ * 
+ * Licensed under the GNU Affero General Public License, Version 3 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at
+ * 
+ * http://www.gnu.org/licenses/agpl.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.vaadin.jefferson;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.vaadin.jefferson.TestViews.Panel;
+import org.vaadin.jefferson.content.ButtonControl;
+
+import com.vaadin.ui.*;
+
+/**
+ * Checks that appending through a {@link TreeBuilder} only presents the
+ * appended subtrees.
+ */
+public class TreeBuilderTest {
+    @Test
+    public void appendKeepsExistingPresentations() {
+        ButtonControl existing = new ButtonControl("existing");
+        Panel inner = new Panel("inner", existing);
+        Panel root = new Panel("root", inner);
+        Presenter presenter = new Presenter();
+        presenter.visit(root);
+        ComponentContainer rootPresentation = root.getPresentation();
+        ComponentContainer innerPresentation = inner.getPresentation();
+        Button existingPresentation = existing.getPresentation();
+
+        ButtonControl first = new ButtonControl("first");
+        ButtonControl second = new ButtonControl("second");
+        assertSame(innerPresentation, TreeBuilder.of(inner)
+                .add(first, second).present(presenter));
+
+        assertEquals(1, root.getFallbacksCreated());
+        assertEquals(1, inner.getFallbacksCreated());
+        assertSame(rootPresentation, root.getPresentation());
+        assertSame(innerPresentation, inner.getPresentation());
+        assertSame(existingPresentation, existing.getPresentation());
+        assertEquals(3, ((CssLayout) innerPresentation).getComponentCount());
+        assertSame(innerPresentation, second.getPresentation().getParent());
+    }
+}
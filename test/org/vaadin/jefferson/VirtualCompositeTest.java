@@ -0,0 +1,131 @@
+/*
+ * Copyright 2011, 2012 Vaadin Ltd.
+ * 
+ * Licensed under the GNU Affero General Public License, Version 3 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at
+ * 
+ * http://www.gnu.org/licenses/agpl.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.vaadin.jefferson;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.junit.Test;
+
+import com.vaadin.data.util.BeanItemContainer;
+import com.vaadin.ui.*;
+
+/**
+ * Checks that a {@link VirtualComposite} rebinds the rows that scroll out of
+ * view to the items that scroll into it.
+ */
+public class VirtualCompositeTest {
+
+    public static class Item {
+        private final int number;
+
+        public Item(int number) {
+            this.number = number;
+        }
+
+        public int getNumber() {
+            return number;
+        }
+    }
+
+    /**
+     * A row that shows the number of its item, and can be rebound by updating
+     * its own presentation.
+     */
+    static class Row extends View<Label> {
+        private static final long serialVersionUID = 1L;
+
+        private String text;
+
+        Row() {
+            super("row", Label.class);
+        }
+
+        void setText(String text) {
+            this.text = text;
+            Label presentation = getPresentation();
+            if (presentation != null) {
+                presentation.setValue(text);
+            }
+        }
+
+        @Override
+        public Label createFallback() {
+            return new Label(text);
+        }
+    }
+
+    /**
+     * Binds rows to the numbers of their items, and counts the rows it
+     * created.
+     */
+    static class Binder implements VirtualComposite.RowBinder<Item, Row> {
+        private static final long serialVersionUID = 1L;
+
+        private int rowsCreated;
+
+        @Override
+        public Row createRow() {
+            rowsCreated++;
+            return new Row();
+        }
+
+        @Override
+        public void bind(Row row, Item item) {
+            row.setText("" + item.getNumber());
+        }
+    }
+
+    @Test
+    public void scrollingRebindsRows() {
+        List<Item> items = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            items.add(new Item(i));
+        }
+        Binder binder = new Binder();
+        VirtualComposite<Item, Row> list = new VirtualComposite<>("list",
+                binder);
+        list.setModel(new BeanItemContainer<>(Item.class, items));
+        VirtualComposite.Viewport viewport = new Presenter().visit(list);
+        new VerticalLayout().addComponent(viewport);
+        viewport.setPageLength(15);
+        viewport.setCurrentPageFirstItemIndex(0);
+        Row first = list.getRow(items.get(0));
+        assertNotNull(first);
+        Label firstPresentation = first.getPresentation();
+
+        viewport.setCurrentPageFirstItemIndex(5000);
+        assertNull(list.getRow(items.get(0)));
+
+        for (int i = 100; i < items.size(); i += 100) {
+            viewport.setCurrentPageFirstItemIndex(i);
+        }
+        assertTrue(binder.rowsCreated <= 2 * list.getRowCount());
+        Set<Label> presentations = Collections
+                .newSetFromMap(new IdentityHashMap<Label, Boolean>());
+        for (Object itemId : viewport.getVisibleItemIds()) {
+            Item item = (Item) itemId;
+            Row row = list.getRow(item);
+            assertNotNull(row);
+            assertEquals("" + item.getNumber(), row.getPresentation()
+                    .getValue());
+            presentations.add(row.getPresentation());
+        }
+        assertEquals(viewport.getVisibleItemIds().size(), presentations.size());
+        assertSame(firstPresentation, first.getPresentation());
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2011, 2012 Vaadin Ltd.
+ * 
+ * Licensed under the GNU Affero General Public License, Version 3 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at
+ * 
+ * http://www.gnu.org/licenses/agpl.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.vaadin.jefferson.content;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.vaadin.jefferson.Presenter;
+
+import com.vaadin.data.Container;
+import com.vaadin.ui.*;
+
+/**
+ * Checks how a {@link SelectionControl} keeps its selection while its choices
+ * change, in single-select and multi-select presentations.
+ */
+public class SelectionControlTest {
+
+    /**
+     * Renders selection controls as multi-select lists.
+     */
+    public static class MultiSelectPresenter extends Presenter {
+        private static final long serialVersionUID = 1L;
+
+        protected void render(SelectionControl<?> view) {
+            ListSelect rendition = new ListSelect();
+            rendition.setMultiSelect(true);
+            setRendition(view, rendition);
+        }
+    }
+
+    /**
+     * Records the changes that it is notified of.
+     */
+    static class Recorder implements
+            SelectionControl.SelectionListener<String> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Collection<String>> added = new ArrayList<>();
+        private final List<Collection<String>> removed = new ArrayList<>();
+
+        @Override
+        public void selectionChange(SelectionControl<String> source,
+                Collection<String> added, Collection<String> removed) {
+            this.added.add(new ArrayList<>(added));
+            this.removed.add(new ArrayList<>(removed));
+        }
+    }
+
+    private SelectionControl<String> control;
+
+    @Before
+    public void setUp() {
+        control = new SelectionControl<>("choice", String.class);
+        control.setChoices("a", "b", "c");
+    }
+
+    @Test
+    public void singleSelectTakesOneBeanCollection() {
+        AbstractSelect presentation = new Presenter().visit(control);
+        assertFalse(presentation.isMultiSelect());
+
+        control.setSelection(Collections.singleton("b"));
+
+        assertEquals("b", control.getSelectedItem());
+        assertEquals("b", presentation.getValue());
+    }
+
+    @Test
+    public void multiSelectTakesCollections() {
+        AbstractSelect presentation = new MultiSelectPresenter()
+                .visit(control);
+        assertTrue(presentation.isMultiSelect());
+
+        control.setSelection(Arrays.asList("a", "c"));
+        assertEquals(new HashSet<>(Arrays.asList("a", "c")), new HashSet<>(
+                control.getSelectedItems()));
+
+        control.setSelection(Collections.singleton("b"));
+        assertEquals(Collections.singletonList("b"), new ArrayList<>(
+                control.getSelectedItems()));
+        assertTrue(presentation.isSelected("b"));
+    }
+
+    @Test
+    public void removingChoicesBeforePresentingKeepsSingleSelection() {
+        control.setSelection("a");
+        control.removeChoices(Collections.singleton("b"));
+        new Presenter().visit(control);
+
+        assertEquals("a", control.getSelectedItem());
+        assertEquals(2, control.getModel().size());
+    }
+
+    @Test
+    public void removingSelectedChoiceBeforePresentingUnselectsIt() {
+        control.setSelection("a", "b");
+        control.removeChoices(Collections.singleton("a"));
+        new Presenter().visit(control);
+
+        assertEquals("b", control.getSelectedItem());
+        assertFalse(control.isSelected("a"));
+    }
+
+    @Test
+    public void addingChoicesKeepsModelAndSelection() {
+        AbstractSelect presentation = new Presenter().visit(control);
+        Container model = presentation.getContainerDataSource();
+        control.setSelection("b");
+
+        control.addChoices(Arrays.asList("d", "e"));
+
+        assertSame(model, presentation.getContainerDataSource());
+        assertEquals(5, model.size());
+        assertTrue(model.containsId("e"));
+        assertEquals("b", control.getSelectedItem());
+    }
+
+    @Test
+    public void removingChoicesUpdatesModelAndSelection() {
+        AbstractSelect presentation = new MultiSelectPresenter()
+                .visit(control);
+        Container model = presentation.getContainerDataSource();
+        control.setSelection("a", "b");
+        Recorder recorder = new Recorder();
+        control.addSelectionListener(recorder);
+
+        control.removeChoices(Collections.singleton("a"));
+
+        assertSame(model, presentation.getContainerDataSource());
+        assertFalse(model.containsId("a"));
+        assertEquals(Collections.singletonList("b"), new ArrayList<>(
+                control.getSelectedItems()));
+        assertEquals(Collections.singletonList(Collections.emptyList()),
+                recorder.added);
+        assertEquals(Collections.singletonList(Collections.singletonList("a")),
+                recorder.removed);
+    }
+
+    @Test
+    public void updatingChoiceKeepsModel() {
+        AbstractSelect presentation = new Presenter().visit(control);
+        Container model = presentation.getContainerDataSource();
+
+        control.updateChoice("a");
+
+        assertSame(model, presentation.getContainerDataSource());
+        assertEquals(3, model.size());
+    }
+
+    @Test
+    public void listenersAreToldWhatChanged() {
+        AbstractSelect presentation = new Presenter().visit(control);
+        control.setSelection("a");
+        Recorder recorder = new Recorder();
+        control.addSelectionListener(recorder);
+
+        presentation.setValue("c");
+
+        assertEquals(Collections.singletonList(Collections.singletonList("c")),
+                recorder.added);
+        assertEquals(Collections.singletonList(Collections.singletonList("a")),
+                recorder.removed);
+
+        control.removeSelectionListener(recorder);
+        presentation.setValue("b");
+        assertEquals(1, recorder.added.size());
+    }
+}